@@ -52,6 +52,8 @@ public class AttributeMetadata implements Serializable {
 
     private Class<? extends Collection<?>> collectionType;
 
+    private int slot;
+
     public String getAttributeName() {
         return attributeName;
     }
@@ -92,6 +94,18 @@ public class AttributeMetadata implements Serializable {
         this.collectionType = collectionType;
     }
 
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * @return the index of this attribute within its class, used to track
+     * per instance state in compact bitsets
+     */
+    public int getSlot() {
+        return slot;
+    }
+
     public String getAttirbuteName() {
         return attributeName;
     }
@@ -79,6 +79,75 @@ public class AttributeMetadataFactory {
         return new Builder(f).build();
     }
 
+    /**
+     * @param property a property of the generated metadata of the class
+     */
+    public AttributeMetadata build(final GeneratedMetadata.Property property) throws MappingException {
+        checkNotNull(property, "property is null");
+
+        final AttributeMetadata meta = new AttributeMetadata();
+        meta.setPropertyName(property.getPropertyName());
+        meta.setAttributeName(property.getAttributeName());
+        meta.setAttributeAliases(property.getAliases());
+        meta.setObjectType(property.getObjectType());
+        final String syntax = getSyntax(emptyToNull(property.getSyntax()), property.getObjectType());
+        meta.setSyntax(syntax);
+        meta.setSyntaxConverter(getSyntaxConverter(syntax));
+        meta.setAttributeConverter(getAttributeConverter(property.getObjectType()));
+        meta.setCollectionType(collectionType(property.getCollectionType()));
+        meta.setDirectoryType(property.getDirectoryType());
+        return meta;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Collection<?>> collectionType(final Class<?> c) {
+        return (Class<? extends Collection<?>>) c;
+    }
+
+    private Converter getSyntaxConverter(final String syntax) throws MappingException {
+        final Converter retval = sessionFactory.getConverter(syntax);
+        if (retval == null) {
+            throw new MappingException(format("Syntax %s not supported", syntax));
+        }
+        return retval;
+    }
+
+    private Converter getAttributeConverter(final Type objectType) throws MappingException {
+        final Converter retval = sessionFactory.getConverter(objectType);
+        if (retval == null
+                && !sessionFactory.isPersistentClass((Class<?>) objectType)) {
+            throw new MappingException(format("No converter found for type %s", objectType));
+        }
+        return retval;
+    }
+
+    /**
+     * @param declared the syntax of the annotation, or null
+     */
+    private String getSyntax(final String declared, final Type objectType) throws MappingException {
+        String retval = declared;
+        if (retval == null) {
+            retval = guessSyntaxFromType(objectType);
+        }
+        if (retval == null) {
+            final Converter attributeConverter = getAttributeConverter(objectType);
+
+            if (attributeConverter == null
+                    && sessionFactory
+                    .isPersistentClass((Class<?>) objectType)) {
+                retval = guessSyntaxFromType(LdapName.class);
+            } else {
+                retval = guessSyntaxFromType(attributeConverter
+                        .directoryType());
+            }
+        }
+        if (retval == null) {
+            throw new MappingException("unsupported attribute type"
+                    + objectType);
+        }
+        return retval;
+    }
+
     private class Builder {
 
         private final Attribute attribute;
@@ -116,23 +185,6 @@ public class AttributeMetadataFactory {
             return meta;
         }
 
-        private Converter getSyntaxConverter(final String syntax) throws MappingException {
-            final Converter retval = sessionFactory.getConverter(syntax);
-            if (retval == null) {
-                throw new MappingException(format("Syntax %s not supported", syntax));
-            }
-            return retval;
-        }
-
-        private Converter getAttributeConverter(final Type objectType) throws MappingException {
-            final Converter retval = sessionFactory.getConverter(objectType);
-            if (retval == null
-                    && !sessionFactory.isPersistentClass((Class<?>) objectType)) {
-                throw new MappingException(format("No converter found for type %s", objectType));
-            }
-            return retval;
-        }
-
         private String getName() {
             String name = null;
             if (attribute != null && !isNullOrEmpty(attribute.name())) {
@@ -150,30 +202,8 @@ public class AttributeMetadataFactory {
         }
 
         private String getSyntax(final Type objectType) throws MappingException {
-            String retval = null;
-            if (attribute != null && !isNullOrEmpty(attribute.syntax())) {
-                retval = emptyToNull(attribute.syntax());
-            }
-            if (retval == null) {
-                retval = guessSyntaxFromType(objectType);
-            }
-            if (retval == null) {
-                final Converter attributeConverter = getAttributeConverter(objectType);
-
-                if (attributeConverter == null
-                        && sessionFactory
-                        .isPersistentClass((Class<?>) objectType)) {
-                    retval = guessSyntaxFromType(LdapName.class);
-                } else {
-                    retval = guessSyntaxFromType(attributeConverter
-                            .directoryType());
-                }
-            }
-            if (retval == null) {
-                throw new MappingException("unsupported attribute type"
-                        + objectType);
-            }
-            return retval;
+            return AttributeMetadataFactory.this.getSyntax(
+                    attribute != null ? emptyToNull(attribute.syntax()) : null, objectType);
         }
 
         private Class<?> getObjectType(Class<?> c) {
@@ -0,0 +1,178 @@
+package fr.mtlx.odm;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Outcome of a batched write: the entries which were written and, for each
+ * entry which was not, the reason why.
+ *
+ * A failing entry does not abort the batch; callers are expected to inspect
+ * {@link #getFailures()}.
+ *
+ * @param <T> the type of the written entries
+ */
+public class BatchResult<T> {
+
+    public static class Failure<T> {
+
+        private final T entry;
+
+        private final Exception cause;
+
+        Failure(final T entry, final Exception cause) {
+            this.entry = entry;
+
+            this.cause = checkNotNull(cause);
+        }
+
+        public T getEntry() {
+            return entry;
+        }
+
+        public Exception getCause() {
+            return cause;
+        }
+    }
+
+    /**
+     * Thread safe accumulator, workers report to it concurrently
+     */
+    public static class Builder<T> {
+
+        private final Queue<T> succeeded = new ConcurrentLinkedQueue<>();
+
+        private final AtomicLong succeededCount = new AtomicLong();
+
+        private final Queue<Failure<T>> failures = new ConcurrentLinkedQueue<>();
+
+        private final long start = System.nanoTime();
+
+        private final boolean retaining;
+
+        public Builder() {
+            this(true);
+        }
+
+        private Builder(final boolean retaining) {
+            this.retaining = retaining;
+        }
+
+        /**
+         * @return a builder which counts the written entries without keeping
+         * them, for batches too large to be held in memory
+         */
+        public static <T> Builder<T> counting() {
+            return new Builder<>(false);
+        }
+
+        public Builder<T> success(final T entry) {
+            checkNotNull(entry);
+
+            if (retaining) {
+                succeeded.add(entry);
+            }
+
+            succeededCount.incrementAndGet();
+
+            return this;
+        }
+
+        public Builder<T> failure(final T entry, final Exception cause) {
+            failures.add(new Failure<>(entry, cause));
+
+            return this;
+        }
+
+        public BatchResult<T> build() {
+            return new BatchResult<>(succeeded, succeededCount.get(), failures, Duration.ofNanos(System.nanoTime()
+                    - start));
+        }
+    }
+
+    private final ImmutableList<T> succeeded;
+
+    private final long succeededCount;
+
+    private final ImmutableList<Failure<T>> failures;
+
+    private final Duration elapsed;
+
+    BatchResult(final Collection<T> succeeded, final long succeededCount, final Collection<Failure<T>> failures,
+            final Duration elapsed) {
+        this.succeeded = ImmutableList.copyOf(succeeded);
+
+        this.succeededCount = succeededCount;
+
+        this.failures = ImmutableList.copyOf(failures);
+
+        this.elapsed = checkNotNull(elapsed);
+    }
+
+    /**
+     * @return the written entries, in completion order; empty if the result
+     * was built by {@link Builder#counting()}
+     */
+    public ImmutableList<T> getSucceeded() {
+        return succeeded;
+    }
+
+    public long getSucceededCount() {
+        return succeededCount;
+    }
+
+    public ImmutableList<Failure<T>> getFailures() {
+        return failures;
+    }
+
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * @return the time from the creation of the builder to the end of the
+     * batch
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return the number of entries written per second
+     */
+    public double getThroughput() {
+        final long millis = elapsed.toMillis();
+
+        return millis > 0 ? succeededCount * 1000.0 / millis : 0;
+    }
+}
@@ -26,11 +26,6 @@ package fr.mtlx.odm;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.String.format;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-
-import static java.lang.reflect.Modifier.isStatic;
-
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 
@@ -45,13 +40,6 @@ import javax.naming.InvalidNameException;
 import javax.naming.Name;
 import javax.naming.ldap.LdapName;
 
-import static org.apache.commons.beanutils.BeanUtils.getProperty;
-
-import org.apache.commons.beanutils.PropertyUtils;
-
-import static org.apache.commons.beanutils.PropertyUtils.getSimpleProperty;
-import static org.springframework.util.ReflectionUtils.doWithFields;
-
 public class ClassAssistant<T> {
 
     private final ClassMetadata<T> metadata;
@@ -61,23 +49,30 @@ public class ClassAssistant<T> {
     }
 
     public void setIdentifier(Object object, Name value) {
-        String identifier = metadata.getIdentifierPropertyName();
-
         try {
-            PropertyUtils.setSimpleProperty(object, identifier, value);
-        } catch (Exception e) {
+            metadata.getIdentifierAccessor().set(object, value);
+        } catch (RuntimeException e) {
             throw new UnsupportedOperationException(e);
         }
     }
 
     public LdapName getIdentifier(Object object) {
-        String identifier = metadata.getIdentifierPropertyName();
+        final Object identifier = metadata.getIdentifierAccessor().get(object);
+
+        if (identifier == null) {
+            return null;
+        }
+
+        // no parsing when the property already holds a DN
+        if (identifier instanceof LdapName) {
+            return (LdapName) ((LdapName) identifier).clone();
+        }
 
         try {
-	    return new LdapName(getProperty(object, identifier));
-	} catch (InvalidNameException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-	    throw new RuntimeException(e);
-	}
+            return new LdapName(identifier.toString());
+        } catch (InvalidNameException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     public boolean isCollection(Type type) {
@@ -89,12 +84,22 @@ public class ClassAssistant<T> {
 
     public Object getValue(Object object, String propertyName) {
         try {
-            return getSimpleProperty(object, propertyName);
+            return accessor(propertyName).get(object);
         } catch (Exception e) {
             throw new UnsupportedOperationException(e);
         }
     }
 
+    private PropertyAccessor accessor(final String propertyName) throws MappingException {
+        final PropertyAccessor accessor = metadata.getAccessor(propertyName);
+
+        if (accessor == null) {
+            throw new MappingException(format("propertyName: unknown property %s", propertyName));
+        }
+
+        return accessor;
+    }
+
     @SuppressWarnings({"unchecked", "rawtypes"})
     private <V> Collection<V> buildCollection(
             final Class<? extends Collection<?>> collectionType,
@@ -118,16 +123,15 @@ public class ClassAssistant<T> {
     public void setSimpleProperty(final String propertyName, T entry,
             final Object singleValue) throws MappingException {
         try {
-            PropertyUtils.setSimpleProperty(entry, propertyName, singleValue);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            accessor(propertyName).set(entry, singleValue);
+        } catch (RuntimeException e) {
             throw new MappingException(e);
         }
     }
 
     public <V> void setProperty(final String propertyName, final T entry,
             final Collection<V> multipleValues) throws MappingException {
-        @SuppressWarnings("unchecked")
-        Class<T> c = (Class<T>) checkNotNull(entry).getClass();
+        checkNotNull(entry);
 
         final AttributeMetadata meta = metadata
                 .getAttributeMetadata(propertyName);
@@ -148,30 +152,9 @@ public class ClassAssistant<T> {
                 meta.getObjectType(), multipleValues);
 
         try {
-            PropertyUtils.setProperty(entry, propertyName, targetValues);
-        } catch (IllegalAccessException | InvocationTargetException e) {
+            accessor(propertyName).set(entry, targetValues);
+        } catch (RuntimeException e) {
             throw new MappingException(e);
-        } catch (NoSuchMethodException e) {
-            try {
-                doWithFields(c, (final Field f) -> {
-                    boolean secured = !f.isAccessible();
-
-                    if (secured) {
-                        f.setAccessible(true);
-                    }
-
-                    f.set(entry, targetValues);
-
-                    if (secured) {
-                        f.setAccessible(false);
-                    }
-                }, (final Field field) -> {
-                    final int modifiers = field.getModifiers();
-                    return !isStatic(modifiers) && (field.getName() == null ? propertyName == null : field.getName().equals(propertyName));
-                });
-            } catch (SecurityException | IllegalArgumentException e1) {
-                throw new MappingException(e1);
-            }
         }
     }
 }
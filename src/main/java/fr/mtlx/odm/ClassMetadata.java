@@ -67,5 +67,17 @@ public interface ClassMetadata<T> {
      */
     boolean isStrict();
 
+    /**
+     * entries are mapped to plain instances rather than proxies
+     */
+    boolean isEager();
+
     ImmutableSet<String> getProperties();
+
+    PropertyAccessor getIdentifierAccessor();
+
+    /**
+     * @return the accessor of a persistent property, or null
+     */
+    PropertyAccessor getAccessor(String propertyName);
 }
@@ -4,6 +4,7 @@ import static java.lang.String.format;
 import static java.lang.reflect.Modifier.isAbstract;
 import static org.springframework.util.ReflectionUtils.doWithMethods;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
@@ -28,6 +29,12 @@ public class ClassMetadataBuilder {
                     persistentClass.getName()));
         }
 
+        final GeneratedMetadata<T> generated = GeneratedMetadata.find(persistentClass);
+
+        if (generated != null) {
+            return build(metadata, generated);
+        }
+
         Class<? super T> currentClass = persistentClass;
 
         List<String> classHierarchy = Lists.newArrayList();
@@ -35,6 +42,8 @@ public class ClassMetadataBuilder {
 
         boolean isStrict = false;
 
+        boolean isEager = false;
+
         do {
             Entry entry = currentClass.getAnnotation(Entry.class);
 
@@ -45,6 +54,8 @@ public class ClassMetadataBuilder {
                         .auxiliaryObjectClasses()));
 
                 isStrict |= entry.ignoreNonMatched();
+
+                isEager |= entry.eager();
             }
 
             currentClass = currentClass.getSuperclass();
@@ -61,18 +72,12 @@ public class ClassMetadataBuilder {
 
         metadata.setAuxiliaryClasses(ImmutableSet.copyOf(auxiliaryClasses));
 
-        try {
-            metadata.setDefaultConstructor(persistentClass
-                    .getConstructor(new Class<?>[]{}));
-        } catch (SecurityException e) {
-            throw new MappingException(e);
-        } catch (NoSuchMethodException e) {
-            throw new MappingException(format(
-                    "no public default constructor found for %s", persistentClass), e);
-        }
+        metadata.setDefaultConstructor(defaultConstructor(persistentClass));
 
         metadata.setStrict(isStrict);
 
+        metadata.setEager(isEager);
+
         metadata.setCacheable(isCacheable(persistentClass));
 
         metadata.setPrepersistMethods(persistMethods(persistentClass));
@@ -80,6 +85,47 @@ public class ClassMetadataBuilder {
         return metadata;
     }
 
+    /**
+     * @return the metadata read from the table generated at compile time,
+     * the class is not scanned
+     */
+    private static <T> PartialClassMetadata<T> build(final PartialClassMetadata<T> metadata,
+            final GeneratedMetadata<T> generated) throws MappingException {
+        if (generated.getObjectClassHierarchy().isEmpty()) {
+            throw new MappingException(format(
+                    "%s is not a persistent class", metadata.getPersistentClass()));
+        }
+
+        metadata.setObjectClassHierarchy(ImmutableList.copyOf(generated.getObjectClassHierarchy()));
+
+        metadata.setAuxiliaryClasses(ImmutableSet.copyOf(generated.getAuxiliaryClasses()));
+
+        metadata.setDefaultConstructor(defaultConstructor(metadata.getPersistentClass()));
+
+        metadata.setStrict(generated.isStrict());
+
+        metadata.setEager(generated.isEager());
+
+        metadata.setCacheable(generated.isCacheable());
+
+        metadata.setPrepersistMethods(Lists.newArrayList(generated.getPrePersistMethods()));
+
+        metadata.setGenerated(generated);
+
+        return metadata;
+    }
+
+    private static <T> Constructor<T> defaultConstructor(final Class<T> persistentClass) throws MappingException {
+        try {
+            return persistentClass.getConstructor(new Class<?>[]{});
+        } catch (SecurityException e) {
+            throw new MappingException(e);
+        } catch (NoSuchMethodException e) {
+            throw new MappingException(format(
+                    "no public default constructor found for %s", persistentClass), e);
+        }
+    }
+
     private static List<Method> persistMethods(final Class<?> persistentClass) {
         final List<Method> prepersistMethods = Lists.newArrayList();
 
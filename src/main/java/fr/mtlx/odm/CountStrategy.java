@@ -0,0 +1,52 @@
+package fr.mtlx.odm;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+/**
+ * How {@link SearchCriteria#count()} obtains the number of matching
+ * entries.
+ */
+public enum CountStrategy {
+
+    /**
+     * VLV for sorted queries when the server supports it, a paged scan
+     * otherwise
+     */
+    AUTO,
+    /**
+     * content count of a virtual list view; requires a sort order, the
+     * count is the server's estimate
+     */
+    VLV,
+    /**
+     * numSubordinates operational attribute of the base; one level scope
+     * only, and the filter is ignored
+     */
+    SUBORDINATES,
+    /**
+     * paged search returning DNs only, counted as they arrive
+     */
+    PAGED_SCAN
+}
@@ -50,4 +50,11 @@ public @interface Entry {
     String[] auxiliaryObjectClasses() default {};
 
     boolean ignoreNonMatched() default false;
+
+    /**
+     * Entries are read into plain instances of the class, with every
+     * attribute loaded at once, instead of lazily loading proxies; see
+     * {@link SearchCriteria#eager()}.
+     */
+    boolean eager() default false;
 }
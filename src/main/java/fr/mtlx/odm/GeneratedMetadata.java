@@ -0,0 +1,191 @@
+package fr.mtlx.odm;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Mapping of a persistent class read from its annotations at compile time
+ * by {@link fr.mtlx.odm.processor.MetadataProcessor}: loading it replaces
+ * the scan of the fields and methods of the class.
+ *
+ * The implementation of a class <code>Foo</code> is
+ * <code>Foo_OdmMetadata</code>, in the same package.
+ */
+public interface GeneratedMetadata<T> {
+
+    String SUFFIX = "_OdmMetadata";
+
+    /**
+     * A mapped field, in slot order
+     */
+    final class Property {
+
+        private final String propertyName;
+
+        private final String attributeName;
+
+        private final String[] aliases;
+
+        private final String syntax;
+
+        private final Class<?> objectType;
+
+        private final Class<?> collectionType;
+
+        private final Class<?> directoryType;
+
+        private final PropertyAccessor accessor;
+
+        /**
+         * @param syntax the declared syntax, null to infer it from the type
+         * @param collectionType null for a single valued attribute
+         * @param accessor null when the processor cannot reach the property,
+         * the field is then accessed reflectively
+         */
+        public Property(final String propertyName, final String attributeName, final String[] aliases,
+                @Nullable final String syntax, final Class<?> objectType, @Nullable final Class<?> collectionType,
+                final Class<?> directoryType, @Nullable final PropertyAccessor accessor) {
+            this.propertyName = checkNotNull(propertyName);
+
+            this.attributeName = checkNotNull(attributeName);
+
+            this.aliases = checkNotNull(aliases);
+
+            this.syntax = syntax;
+
+            this.objectType = checkNotNull(objectType);
+
+            this.collectionType = collectionType;
+
+            this.directoryType = checkNotNull(directoryType);
+
+            this.accessor = accessor;
+        }
+
+        public String getPropertyName() {
+            return propertyName;
+        }
+
+        public String getAttributeName() {
+            return attributeName;
+        }
+
+        public String[] getAliases() {
+            return aliases.clone();
+        }
+
+        public @Nullable String getSyntax() {
+            return syntax;
+        }
+
+        public Class<?> getObjectType() {
+            return objectType;
+        }
+
+        public @Nullable Class<?> getCollectionType() {
+            return collectionType;
+        }
+
+        public Class<?> getDirectoryType() {
+            return directoryType;
+        }
+
+        public @Nullable PropertyAccessor getAccessor() {
+            return accessor;
+        }
+    }
+
+    Class<T> getPersistentClass();
+
+    /**
+     * @return the object classes, the structural one last
+     */
+    List<String> getObjectClassHierarchy();
+
+    Set<String> getAuxiliaryClasses();
+
+    boolean isStrict();
+
+    boolean isEager();
+
+    boolean isCacheable();
+
+    /**
+     * @return the name of the field annotated with {@link Id}, or null
+     */
+    @Nullable
+    String getIdentifierPropertyName();
+
+    @Nullable
+    PropertyAccessor getIdentifierAccessor();
+
+    List<Property> getProperties();
+
+    List<Method> getPrePersistMethods();
+
+    /**
+     * @return the generated metadata of the class, or null if the class was
+     * not processed
+     */
+    @SuppressWarnings("unchecked")
+    static @Nullable <T> GeneratedMetadata<T> find(final Class<T> persistentClass) throws MappingException {
+        final ClassLoader loader = persistentClass.getClassLoader();
+
+        if (loader == null) {
+            return null;
+        }
+
+        try {
+            final Class<?> generated = Class.forName(persistentClass.getName() + SUFFIX, true, loader);
+
+            final GeneratedMetadata<T> metadata = (GeneratedMetadata<T>) generated.newInstance();
+
+            // a stale table, generated for an other class of the same name
+            return metadata.getPersistentClass() == persistentClass ? metadata : null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+            throw new MappingException(String.format("cannot load the metadata of %s", persistentClass), e);
+        }
+    }
+
+    /**
+     * @return a method without parameters declared by a class, for the
+     * generated tables
+     */
+    static Method method(final Class<?> declaringClass, final String name) {
+        try {
+            return declaringClass.getDeclaredMethod(name);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(String.format("%s.%s not found", declaringClass.getName(), name), e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package fr.mtlx.odm;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Resolves the mapped class of an entry from its object classes.
+ *
+ * Every object class required by a mapped class (its structural class and
+ * its auxiliary classes) is given a bit; a class matches an entry when all
+ * its bits are set in the mask of the entry. The classes are tried from the
+ * most specific to the least: first the ones requiring the most object
+ * classes, then the deepest in the object class hierarchy, then in mapping
+ * order. The first match is returned.
+ * Names are compared ignoring case, as the directory does.
+ *
+ * As long as the mapped classes require at most 64 object classes, masks
+ * are longs and the last resolutions are remembered by mask: resolving an
+ * entry then allocates nothing.
+ */
+final class ObjectClassIndex {
+
+    private static final int MEMO_SIZE = 256;
+
+    private static final class Memo {
+
+        final long mask;
+
+        final int candidate;
+
+        Memo(final long mask, final int candidate) {
+            this.mask = mask;
+
+            this.candidate = candidate;
+        }
+    }
+
+    private final Map<String, Integer> bits = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private final ClassMetadata<?>[] candidates;
+
+    private final BitSet[] required;
+
+    // null when the bits do not fit in a long
+    private final long[] masks;
+
+    // direct mapped, a collision replaces the previous resolution
+    private final Memo[] memo = new Memo[MEMO_SIZE];
+
+    ObjectClassIndex(final Collection<? extends ClassMetadata<?>> metadata) {
+        final List<ClassMetadata<?>> ranked = new ArrayList<>(metadata);
+
+        final Map<ClassMetadata<?>, BitSet> requirements = new IdentityHashMap<>();
+
+        for (ClassMetadata<?> candidate : ranked) {
+            final BitSet requirement = new BitSet();
+
+            requirement.set(bit(candidate.getStructuralClass()));
+
+            for (String auxiliaryClass : candidate.getAuxiliaryClasses()) {
+                requirement.set(bit(auxiliaryClass));
+            }
+
+            requirements.put(candidate, requirement);
+        }
+
+        // stable, classes as specific keep the mapping order
+        ranked.sort(Comparator.comparingInt((ClassMetadata<?> m) -> requirements.get(m).cardinality())
+                .thenComparingInt(m -> m.getObjectClassHierarchy().size()).reversed());
+
+        candidates = ranked.toArray(new ClassMetadata<?>[ranked.size()]);
+
+        required = new BitSet[candidates.length];
+
+        for (int i = 0; i < candidates.length; i++) {
+            required[i] = requirements.get(candidates[i]);
+        }
+
+        if (bits.size() <= Long.SIZE) {
+            masks = new long[candidates.length];
+
+            for (int i = 0; i < candidates.length; i++) {
+                masks[i] = required[i].isEmpty() ? 0 : required[i].toLongArray()[0];
+            }
+        } else {
+            masks = null;
+        }
+    }
+
+    private int bit(final String objectClass) {
+        return bits.computeIfAbsent(objectClass, oc -> bits.size());
+    }
+
+    /**
+     * @return the metadata of the most specific class matching the object
+     * classes, null if none does
+     */
+    @Nullable ClassMetadata<?> resolve(final String[] objectClasses) {
+        if (masks == null) {
+            return resolveLarge(objectClasses);
+        }
+
+        long mask = 0;
+
+        for (String objectClass : objectClasses) {
+            final Integer bit = bits.get(objectClass);
+
+            if (bit != null) {
+                mask |= 1L << bit;
+            }
+        }
+
+        final int slot = (int) ((mask ^ mask >>> 32) * 0x9E3779B9L >>> 24) & MEMO_SIZE - 1;
+
+        final Memo memoized = memo[slot];
+
+        if (memoized != null && memoized.mask == mask) {
+            return memoized.candidate < 0 ? null : candidates[memoized.candidate];
+        }
+
+        int candidate = -1;
+
+        for (int i = 0; i < masks.length; i++) {
+            if ((masks[i] & mask) == masks[i]) {
+                candidate = i;
+
+                break;
+            }
+        }
+
+        memo[slot] = new Memo(mask, candidate);
+
+        return candidate < 0 ? null : candidates[candidate];
+    }
+
+    private @Nullable ClassMetadata<?> resolveLarge(final String[] objectClasses) {
+        final BitSet mask = new BitSet(bits.size());
+
+        for (String objectClass : objectClasses) {
+            final Integer bit = bits.get(objectClass);
+
+            if (bit != null) {
+                mask.set(bit);
+            }
+        }
+
+        for (int i = 0; i < required.length; i++) {
+            final BitSet missing = (BitSet) required[i].clone();
+
+            missing.andNot(mask);
+
+            if (missing.isEmpty()) {
+                return candidates[i];
+            }
+        }
+
+        return null;
+    }
+}
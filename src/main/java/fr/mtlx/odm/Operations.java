@@ -23,6 +23,10 @@ package fr.mtlx.odm;
  * <http://www.gnu.org/licenses/gpl-3.0.html>.
  * #L%
  */
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Stream;
+
 import javax.naming.Name;
 import javax.naming.NameNotFoundException;
 import javax.naming.directory.SearchControls;
@@ -33,12 +37,34 @@ public interface Operations<T> {
 
     T lookupByExample(T example) throws NameNotFoundException;
 
+    /**
+     * Looks several entries up at once: cached entries are served from the
+     * session, the other ones are read with as few requests as possible.
+     *
+     * @return the entries found, by DN, in the order of the given DNs
+     */
+    Map<Name, T> lookupAll(Collection<? extends Name> dns);
+
     SearchCriteriaImpl<T> search(Name base, SearchControls controls);
 
     SearchCriteriaImpl<T> search(Name base);
 
     void bind(T transientObject);
 
+    /**
+     * Binds every entry of the stream, several at a time; a failing entry is
+     * reported in the result and does not abort the batch. Interrupting the
+     * calling thread stops binding the remaining entries.
+     *
+     * The entries are written at once, even in a write-behind session: its
+     * queued writes are flushed first.
+     */
+    BatchResult<T> bindAll(Stream<T> transientObjects);
+
+    default BatchResult<T> bindAll(Collection<T> transientObjects) {
+        return bindAll(transientObjects.stream());
+    }
+
     void modify(T persistentObject);
 
     void unbind(T persistentObject);
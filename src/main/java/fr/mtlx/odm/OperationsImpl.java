@@ -25,9 +25,18 @@ package fr.mtlx.odm;
  */
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 import javax.naming.Name;
@@ -36,7 +45,13 @@ import javax.naming.directory.SearchControls;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
 import fr.mtlx.odm.cache.TypeSafeCache;
+import fr.mtlx.odm.collections.ReferenceCollection;
+import fr.mtlx.odm.export.EntryWriter;
 
 public abstract class OperationsImpl<T> implements Operations<T> {
 
@@ -89,6 +104,114 @@ public abstract class OperationsImpl<T> implements Operations<T> {
                 persistentClass, dn));
     }
 
+    @Override
+    public Map<Name, T> lookupAll(final Collection<? extends Name> dns) {
+        // keeps the order of the DNs
+        final Map<Name, T> entries = Maps.newLinkedHashMap();
+
+        final List<Name> missing = Lists.newArrayList();
+
+        for (Name dn : dns) {
+            final Optional<T> cached = getSession().getFromCacheStack(persistentClass, dn);
+
+            entries.put(dn, cached.orElse(null));
+
+            if (!cached.isPresent()) {
+                missing.add(dn);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            if (log.isDebugEnabled()) {
+                log.debug("looking up {} entries, {} cached", missing.size(), dns.size() - missing.size());
+            }
+
+            doLookupAll(missing).forEach((dn, entry) -> {
+                entryCache.store(dn, entry);
+
+                getSession().getSessionFactory().getCache().store(dn, entry);
+
+                entries.put(dn, entry);
+            });
+        }
+
+        entries.values().removeIf(Objects::isNull);
+
+        return entries;
+    }
+
+    /**
+     * Resolves, in one batched pass per property, the entries referenced
+     * along a property path (<code>members.manager</code>) by a page of
+     * entries: reading the references afterwards hits the session cache.
+     *
+     * @param entries the page, entries of other classes are ignored
+     */
+    public void prefetch(final Collection<?> entries, final String path) {
+        checkNotNull(path, "path is null");
+
+        final int dot = path.indexOf('.');
+
+        final String property = dot < 0 ? path : path.substring(0, dot);
+
+        final AttributeMetadata attribute = metadata.getAttributeMetadata(property);
+
+        if (attribute == null) {
+            throw new UnsupportedOperationException(String.format("property %s not found in %s", property,
+                    persistentClass));
+        }
+
+        if (attribute.getAttributeConverter() != null
+                || !getSession().getSessionFactory().isPersistentClass(attribute.getObjectType())) {
+            throw new UnsupportedOperationException(String.format("property %s of %s is not a reference", property,
+                    persistentClass));
+        }
+
+        final Set<Name> dns = Sets.newLinkedHashSet();
+
+        for (Object entry : entries) {
+            if (persistentClass.isInstance(entry)) {
+                dns.addAll(referencedDns(persistentClass.cast(entry), attribute));
+            }
+        }
+
+        final OperationsImpl<?> target = (OperationsImpl<?>) getSession().getOperations(attribute.getObjectType());
+
+        final Map<Name, ?> referenced = target.lookupAll(dns);
+
+        if (dot >= 0 && !referenced.isEmpty()) {
+            target.prefetch(referenced.values(), path.substring(dot + 1));
+        }
+    }
+
+    /**
+     * @return the DNs held by a reference property of an entry; this
+     * implementation reads the property, subclasses may read the entry
+     * itself rather than resolve the references
+     */
+    protected Collection<? extends Name> referencedDns(final T entry, final AttributeMetadata attribute) {
+        final Object value = new ClassAssistant<>(metadata).getValue(entry, attribute.getPropertyName());
+
+        if (value == null) {
+            return Collections.emptyList();
+        } else if (value instanceof ReferenceCollection) {
+            return ((ReferenceCollection<?>) value).getDns();
+        }
+
+        final ClassAssistant<?> assistant = new ClassAssistant<>(getSession().getSessionFactory().getClassMetadata(
+                attribute.getObjectType()));
+
+        final List<Name> dns = Lists.newArrayList();
+
+        for (Object reference : value instanceof Collection ? (Collection<?>) value : Collections.singleton(value)) {
+            if (reference != null) {
+                dns.add(assistant.getIdentifier(reference));
+            }
+        }
+
+        return dns;
+    }
+
     @Override
     public T lookupByExample(T example) {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -104,13 +227,33 @@ public abstract class OperationsImpl<T> implements Operations<T> {
         return new SearchCriteriaImpl<>(this, base);
     }
 
-    public abstract List<T> search(final Name base, final SearchControls controls, final String filter)
-            throws javax.naming.SizeLimitExceededException;
+    public abstract List<T> search(final Name base, final SearchControls controls, final String filter,
+            final SearchOptions options) throws javax.naming.SizeLimitExceededException;
 
-    public abstract long count(final Name base, final SearchControls controls, final String filter)
+    /**
+     * @return the entries, mapped as they are read; closing the stream
+     * abandons the search
+     */
+    public abstract Stream<T> stream(final Name base, final SearchControls controls, final String filter,
+            final SearchOptions options);
+
+    public abstract CompletableFuture<List<T>> listAsync(final Name base, final SearchControls controls,
+            final String filter, final SearchOptions options);
+
+    public abstract long count(final Name base, final SearchControls controls, final String filter,
+            final SearchOptions options)
             throws javax.naming.SizeLimitExceededException;
 
-    public abstract Iterable<List<T>> pages(final int pageSize, String filter, Name base, final SearchControls controls);
+    public abstract Iterable<List<T>> pages(final int pageSize, String filter, Name base, final SearchControls controls,
+            final SearchOptions options);
+
+    /**
+     * @param pageSize the size of the pages requested to the server, or 0
+     * for a single search
+     * @return the number of exported entries
+     */
+    public abstract long export(final Name base, final SearchControls controls, final String filter, final int pageSize,
+            final EntryWriter writer) throws IOException, javax.naming.SizeLimitExceededException;
 
     public SessionImpl getSession() {
         return session;
@@ -123,6 +266,40 @@ public abstract class OperationsImpl<T> implements Operations<T> {
     // hook
     protected abstract @Nonnull T doLookup(@Nonnull final Name dn);
 
+    /**
+     * @return the entries found, missing ones are left out
+     */
+    protected abstract Map<Name, T> doLookupAll(List<Name> dns);
+
+    @Override
+    public void bind(final T transientObject) {
+        prePersist(checkNotNull(transientObject));
+
+        if (getSession().isWriteBehind()) {
+            final Name dn = new ClassAssistant<>(metadata).getIdentifier(transientObject);
+
+            getSession().getUnitOfWork().bind(dn, transientObject, this);
+
+            // visible to lookups before it is written
+            entryCache.store(dn, transientObject);
+        } else {
+            doBind(transientObject);
+        }
+    }
+
+    @Override
+    public void modify(final T persistentObject) {
+        checkNotNull(persistentObject);
+
+        if (getSession().isWriteBehind()) {
+            final Name dn = new ClassAssistant<>(metadata).getIdentifier(persistentObject);
+
+            getSession().getUnitOfWork().modify(dn, persistentObject, this);
+        } else {
+            doModify(persistentObject);
+        }
+    }
+
     @Override
     public void unbind(final T persistentObject) {
         Name dn;
@@ -133,11 +310,19 @@ public abstract class OperationsImpl<T> implements Operations<T> {
             throw new IllegalArgumentException("not a persistent object");
         }
 
-        doUnbind(dn);
+        if (getSession().isWriteBehind()) {
+            getSession().getUnitOfWork().unbind(dn, this);
+        } else {
+            doUnbind(dn);
+        }
 
         getSession().getCache().remove(dn);
     }
 
+    protected abstract void doBind(T transientObject);
+
+    protected abstract void doModify(T persistentObject);
+
     protected abstract void doUnbind(Name dn);
 
     protected final void prePersist(final T transientObject) {
@@ -35,12 +35,20 @@ public class PartialClassMetadata<T> implements ClassMetadata<T> {
 
     private Map<String, AttributeMetadata> attributeMetadataByPropertyName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 
+    private final Map<String, PropertyAccessor> accessors = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private PropertyAccessor identifierAccessor;
+
     private List<Method> prepersistMethods = Lists.newArrayList();
 
     private boolean cacheable;
 
     private boolean strict;
 
+    private boolean eager;
+
+    private GeneratedMetadata<T> generated;
+
     private Boolean initState = true;
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
@@ -106,6 +114,16 @@ public class PartialClassMetadata<T> implements ClassMetadata<T> {
         return ImmutableSet.copyOf(attributeMetadataByPropertyName.keySet());
     }
 
+    @Override
+    public PropertyAccessor getIdentifierAccessor() {
+        return identifierAccessor;
+    }
+
+    @Override
+    public PropertyAccessor getAccessor(final String propertyName) {
+        return accessors.get(propertyName);
+    }
+
     @Override
     public Method[] prepersistMethods() {
         return prepersistMethods.toArray(new Method[]{});
@@ -121,6 +139,11 @@ public class PartialClassMetadata<T> implements ClassMetadata<T> {
         return strict;
     }
 
+    @Override
+    public boolean isEager() {
+        return eager;
+    }
+
     private void initPersistentAttributes(
             final SessionFactoryImpl sessionFactory) {
         final List<AttributeMetadata> attributes = Lists.newArrayList();
@@ -134,6 +157,8 @@ public class PartialClassMetadata<T> implements ClassMetadata<T> {
             }
             try {
                 attributes.add(new AttributeMetadataFactory(persistentClass, sessionFactory).build(f));
+
+                accessors.put(f.getName(), PropertyAccessor.of(persistentClass, f));
             } catch (MappingException e) {
                 throw new IllegalArgumentException(e);
             }
@@ -171,6 +196,74 @@ public class PartialClassMetadata<T> implements ClassMetadata<T> {
                 }
             }
         });
+
+        int slot = 0;
+
+        for (final AttributeMetadata metadata : attributeMetadataByPropertyName.values()) {
+            metadata.setSlot(slot++);
+        }
+    }
+
+    /**
+     * Reads the attributes from the generated table; slots follow the order
+     * of the table, which the generated mapper relies on
+     */
+    private void initGenerated(final SessionFactoryImpl sessionFactory) {
+        final String identifier = generated.getIdentifierPropertyName();
+
+        if (identifier != null) {
+            identifierField = findField(identifier);
+
+            identifierAccessor = generated.getIdentifierAccessor();
+
+            if (identifierAccessor == null) {
+                initIdentifierAccessor();
+            } else {
+                accessors.put(identifier, identifierAccessor);
+            }
+        }
+
+        final AttributeMetadataFactory factory = new AttributeMetadataFactory(persistentClass, sessionFactory);
+
+        int slot = 0;
+
+        for (GeneratedMetadata.Property property : generated.getProperties()) {
+            final AttributeMetadata metadata;
+
+            try {
+                metadata = factory.build(property);
+
+                accessors.put(property.getPropertyName(), property.getAccessor() != null ? property.getAccessor()
+                        : PropertyAccessor.of(persistentClass, findField(property.getPropertyName())));
+            } catch (MappingException e) {
+                throw new IllegalArgumentException(e);
+            }
+
+            metadata.setSlot(slot++);
+
+            attributeMetadataByPropertyName.put(metadata.getPropertyName(), metadata);
+
+            attributeMetadataByAttributeName.put(metadata.getAttirbuteName(), metadata);
+
+            for (final String alias : metadata.getAttributeAliases()) {
+                if (!Strings.isNullOrEmpty(alias) && !attributeMetadataByAttributeName.containsKey(alias)) {
+                    attributeMetadataByAttributeName.put(alias, metadata);
+                }
+            }
+        }
+    }
+
+    // the field of a generated property, a single lookup per class
+    private Field findField(final String name) {
+        for (Class<?> c = persistentClass; c != null; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(name);
+            } catch (NoSuchFieldException e) {
+                // declared by a super class
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("field %s not found in %s", name, persistentClass));
     }
 
     private boolean isTransient(final Field field) {
@@ -191,6 +284,20 @@ public class PartialClassMetadata<T> implements ClassMetadata<T> {
         });
     }
 
+    private void initIdentifierAccessor() {
+        if (identifierField == null) {
+            return;
+        }
+
+        try {
+            identifierAccessor = PropertyAccessor.of(persistentClass, identifierField);
+        } catch (MappingException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        accessors.put(identifierField.getName(), identifierAccessor);
+    }
+
     public Field getIdentifierField() {
         return identifierField;
     }
@@ -246,14 +353,38 @@ public class PartialClassMetadata<T> implements ClassMetadata<T> {
         this.strict = strict;
     }
 
+    public void setEager(boolean eager) {
+        this.eager = eager;
+    }
+
+    /**
+     * @param generated the table read at compile time, replacing the scan of
+     * the fields
+     */
+    public void setGenerated(GeneratedMetadata<T> generated) {
+        this.generated = generated;
+    }
+
+    public boolean isGenerated() {
+        return generated != null;
+    }
+
     void init(final SessionFactoryImpl sessionFactory) {
         if (initState) {
             synchronized (initState) {
                 if (initState) {
                     initState = false;
 
+                    if (generated != null) {
+                        initGenerated(sessionFactory);
+
+                        return;
+                    }
+
                     findIdentifier();
 
+                    initIdentifierAccessor();
+
                     initPersistentAttributes(sessionFactory);
                 }
             }
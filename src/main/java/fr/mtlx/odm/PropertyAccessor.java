@@ -0,0 +1,164 @@
+package fr.mtlx.odm;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Throwables;
+
+/**
+ * Reads and writes a property through method handles resolved once per
+ * class: the getter and setter when they exist, the field otherwise.
+ */
+public final class PropertyAccessor {
+
+    private final String propertyName;
+
+    private final MethodHandle getter;
+
+    private final MethodHandle setter;
+
+    private PropertyAccessor(final String propertyName, final MethodHandle getter, final MethodHandle setter) {
+        this.propertyName = propertyName;
+
+        this.getter = getter.asType(methodType(Object.class, Object.class));
+
+        // final fields without setter are read only
+        this.setter = setter != null ? setter.asType(methodType(void.class, Object.class, Object.class)) : null;
+    }
+
+    /**
+     * @param field the field backing the property
+     */
+    public static PropertyAccessor of(final Class<?> type, final Field field) throws MappingException {
+        checkNotNull(field);
+
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        Method read = null;
+        Method write = null;
+
+        try {
+            for (PropertyDescriptor descriptor : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+                if (descriptor.getName().equals(field.getName())) {
+                    read = descriptor.getReadMethod();
+                    write = descriptor.getWriteMethod();
+                }
+            }
+        } catch (IntrospectionException e) {
+            throw new MappingException(e);
+        }
+
+        try {
+            if ((read == null || write == null) && !Modifier.isPublic(field.getModifiers())) {
+                field.setAccessible(true);
+            }
+
+            final MethodHandle getter = read != null ? lookup.unreflect(accessible(read)) : lookup.unreflectGetter(field);
+
+            final MethodHandle setter;
+
+            if (write != null) {
+                setter = lookup.unreflect(accessible(write));
+            } else if (!Modifier.isFinal(field.getModifiers())) {
+                setter = lookup.unreflectSetter(field);
+            } else {
+                setter = null;
+            }
+
+            return new PropertyAccessor(field.getName(), getter, setter);
+        } catch (IllegalAccessException | SecurityException e) {
+            throw new MappingException(e);
+        }
+    }
+
+    /**
+     * @param setter null for a read only property
+     * @return an accessor calling functions, as generated by
+     * {@link fr.mtlx.odm.processor.MetadataProcessor}
+     */
+    public static PropertyAccessor of(final String propertyName, final Function<Object, Object> getter,
+            @Nullable final BiConsumer<Object, Object> setter) {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        try {
+            return new PropertyAccessor(checkNotNull(propertyName), lookup.findVirtual(Function.class, "apply",
+                    methodType(Object.class, Object.class)).bindTo(checkNotNull(getter)),
+                    setter != null ? lookup.findVirtual(BiConsumer.class, "accept",
+                            methodType(void.class, Object.class, Object.class)).bindTo(setter) : null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // public methods of a non public class
+    private static Method accessible(final Method method) {
+        if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            method.setAccessible(true);
+        }
+
+        return method;
+    }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+
+    public Object get(final Object bean) {
+        try {
+            return getter.invokeExact(checkNotNull(bean));
+        } catch (Throwable e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * @throws ClassCastException if the value does not fit the property
+     */
+    public void set(final Object bean, final Object value) {
+        if (setter == null) {
+            throw new UnsupportedOperationException(String.format("read only property %s", propertyName));
+        }
+
+        try {
+            setter.invokeExact(checkNotNull(bean), value);
+        } catch (Throwable e) {
+            throw Throwables.propagate(e);
+        }
+    }
+}
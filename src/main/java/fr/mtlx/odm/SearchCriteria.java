@@ -5,10 +5,15 @@
  */
 package fr.mtlx.odm;
 
+import fr.mtlx.odm.export.EntryWriter;
 import fr.mtlx.odm.filters.Filter;
 import fr.mtlx.odm.filters.FilterBuilder;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import javax.naming.Name;
 import javax.naming.SizeLimitExceededException;
 import javax.persistence.NonUniqueResultException;
@@ -32,16 +37,81 @@ public interface SearchCriteria<T> {
 
     SearchCriteriaImpl<T> countLimit(long limit);
 
+    SearchCriteriaImpl<T> countStrategy(CountStrategy strategy);
+
     SearchCriteriaImpl<T> example(T example);
 
     List<T> list() throws SizeLimitExceededException;
 
+    /**
+     * Maps the entries as they are received; closing the stream before its
+     * end abandons the search. The stream must be closed.
+     */
+    Stream<T> stream();
+
+    /**
+     * Searches in the background; cancelling the future abandons the
+     * search.
+     */
+    CompletableFuture<List<T>> listAsync();
+
+    /**
+     * Client side limit of the duration of the search, after which it is
+     * abandoned and a time limit exceeded is raised; unlike
+     * {@link #timeLimit(int)} it does not rely on the server.
+     */
+    SearchCriteriaImpl<T> deadline(Duration deadline);
+
+    /**
+     * Maps the results to plain instances with every attribute loaded,
+     * without proxies nor keeping the entries read in the session: cheaper
+     * for read only results, a modification looks the entry up again.
+     */
+    SearchCriteriaImpl<T> eager();
+
+    /**
+     * Resolves the entries referenced along each path
+     * (<code>members</code>, <code>members.manager</code>) by the whole
+     * result, or by each page, in one batched lookup per property, before
+     * they are returned. Applies to {@link #list()}, {@link #unique()} and
+     * {@link #pages(int)}.
+     */
+    SearchCriteriaImpl<T> fetch(String... paths);
+
     void nop() throws SizeLimitExceededException;
 
     Iterable<List<T>> pages(final int pageSize);
 
+    /**
+     * Writes the matching entries as they are received, without mapping
+     * them.
+     *
+     * @return the number of exported entries
+     */
+    long export(EntryWriter writer) throws IOException, SizeLimitExceededException;
+
+    /**
+     * Paged variant of {@link #export(EntryWriter)}, for result sets larger
+     * than the server size limit.
+     */
+    long export(int pageSize, EntryWriter writer) throws IOException, SizeLimitExceededException;
+
     SearchCriteriaImpl<T> properties(String... properties);
 
+    /**
+     * Sorts the entries on the server (RFC 2891); successive calls add
+     * secondary sort keys.
+     */
+    SearchCriteriaImpl<T> orderBy(String property, boolean ascending);
+
+    /**
+     * Restricts the results to a window of the sorted entries, using the
+     * virtual list view control; requires {@link #orderBy(String, boolean)}.
+     *
+     * @param offset index of the first entry, from 0
+     */
+    SearchCriteriaImpl<T> window(int offset, int size);
+
     SearchCriteriaImpl<T> scope(int scope);
 
     SearchCriteriaImpl<T> timeLimit(int ms);
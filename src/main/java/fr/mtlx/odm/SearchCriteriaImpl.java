@@ -23,7 +23,9 @@ package fr.mtlx.odm;
  * <http://www.gnu.org/licenses/gpl-3.0.html>.
  * #L%
  */
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -31,18 +33,24 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import static fr.mtlx.odm.SessionImpl.getDefaultSearchControls;
+import fr.mtlx.odm.export.EntryWriter;
 import fr.mtlx.odm.filters.Filter;
 import fr.mtlx.odm.filters.FilterBuilder;
 import fr.mtlx.odm.filters.FilterBuilderImpl;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import javax.naming.Name;
 import javax.naming.SizeLimitExceededException;
 import javax.naming.directory.SearchControls;
+import javax.naming.ldap.SortKey;
 import javax.persistence.NonUniqueResultException;
 
 public class SearchCriteriaImpl<T> implements SearchCriteria<T> {
@@ -57,6 +65,8 @@ public class SearchCriteriaImpl<T> implements SearchCriteria<T> {
 
     private final Map<String, Collection> projections = Maps.newHashMap();
 
+    private final SearchOptions options = new SearchOptions();
+
     public SearchCriteriaImpl(final OperationsImpl<T> ops, final Name root) {
         this(ops, root, getDefaultSearchControls());
     }
@@ -85,7 +95,30 @@ public class SearchCriteriaImpl<T> implements SearchCriteria<T> {
 
     @Override
     public long count() throws SizeLimitExceededException {
-        return ops.count(base, controls, encodeFilter());
+        return ops.count(base, controls, encodeFilter(), options);
+    }
+
+    @Override
+    public SearchCriteriaImpl<T> eager() {
+        options.setEager(true);
+
+        return this;
+    }
+
+    @Override
+    public SearchCriteriaImpl<T> fetch(final String... paths) {
+        for (String path : paths) {
+            options.addFetchPath(path);
+        }
+
+        return this;
+    }
+
+    @Override
+    public SearchCriteriaImpl<T> countStrategy(final CountStrategy strategy) {
+        options.setCountStrategy(strategy);
+
+        return this;
     }
 
     @Override
@@ -126,9 +159,51 @@ public class SearchCriteriaImpl<T> implements SearchCriteria<T> {
         return this;
     }
 
+    @Override
+    public SearchCriteriaImpl<T> orderBy(final String property, final boolean ascending) {
+        final AttributeMetadata attr = ops.metadata.getAttributeMetadata(checkNotNull(property));
+
+        if (attr == null) {
+            throw new UnsupportedOperationException(String.format(
+                    "property %s not found in %s", property,
+                    ops.metadata.getPersistentClass()));
+        }
+
+        options.addSortKey(new SortKey(attr.getAttirbuteName(), ascending, null));
+
+        return this;
+    }
+
+    @Override
+    public SearchCriteriaImpl<T> window(final int offset, final int size) {
+        options.setWindow(offset, size);
+
+        return this;
+    }
+
     @Override
     public Iterable<List<T>> pages(final int pageSize) {
-        return ops.pages(pageSize, encodeFilter(), base, controls);
+        checkState(!options.hasWindow(), "a window cannot be paged");
+
+        final List<String> fetchPaths = options.getFetchPaths();
+
+        return Iterables.transform(ops.pages(pageSize, encodeFilter(), base, controls, options), page -> {
+            fetch(page, fetchPaths);
+
+            return page;
+        });
+    }
+
+    @Override
+    public long export(final EntryWriter writer) throws IOException, SizeLimitExceededException {
+        return ops.export(base, controls, encodeFilter(), 0, checkNotNull(writer));
+    }
+
+    @Override
+    public long export(final int pageSize, final EntryWriter writer) throws IOException, SizeLimitExceededException {
+        checkArgument(pageSize > 0, "pageSize must be positive");
+
+        return ops.export(base, controls, encodeFilter(), pageSize, checkNotNull(writer));
     }
 
     protected String encodeFilter() {
@@ -160,16 +235,41 @@ public class SearchCriteriaImpl<T> implements SearchCriteria<T> {
 
     @Override
     public List<T> list() throws javax.naming.SizeLimitExceededException {
-        List<T> results = ops.search(base, controls, encodeFilter());
+        List<T> results = ops.search(base, controls, encodeFilter(), options);
+
+        fetch(results, options.getFetchPaths());
 
         projections(results);
 
         return results;
     }
 
+    @Override
+    public Stream<T> stream() {
+        return ops.stream(base, controls, encodeFilter(), options);
+    }
+
+    @Override
+    public CompletableFuture<List<T>> listAsync() {
+        return ops.listAsync(base, controls, encodeFilter(), options);
+    }
+
+    @Override
+    public SearchCriteriaImpl<T> deadline(final Duration deadline) {
+        options.setDeadline(deadline);
+
+        return this;
+    }
+
     @Override
     public void nop() throws javax.naming.SizeLimitExceededException {
-        projections(ops.search(base, controls, encodeFilter()));
+        projections(ops.search(base, controls, encodeFilter(), options));
+    }
+
+    private void fetch(final List<T> page, final List<String> paths) {
+        for (String path : paths) {
+            ops.prefetch(page, path);
+        }
     }
 
     private void projections(List<T> results) {
@@ -210,12 +310,16 @@ public class SearchCriteriaImpl<T> implements SearchCriteria<T> {
 
         controls.setCountLimit(1);
 
+        options.setHedged(true);
+
         try {
             results = list();
         } catch (javax.naming.SizeLimitExceededException e) {
             throw new NonUniqueResultException(e.getMessage());
         } finally {
             controls.setCountLimit(countLimit);
+
+            options.setHedged(false);
         }
 
         projections(results);
@@ -0,0 +1,151 @@
+package fr.mtlx.odm;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import javax.naming.ldap.SortKey;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Request controls of a search, set through {@link SearchCriteria}.
+ */
+public class SearchOptions {
+
+    private final List<SortKey> sortKeys = Lists.newArrayList();
+
+    private int offset = -1;
+
+    private int size;
+
+    private CountStrategy countStrategy = CountStrategy.AUTO;
+
+    private Duration deadline;
+
+    private boolean hedged;
+
+    private boolean eager;
+
+    private final List<String> fetchPaths = Lists.newArrayList();
+
+    public void addSortKey(final SortKey sortKey) {
+        sortKeys.add(checkNotNull(sortKey));
+    }
+
+    public ImmutableList<SortKey> getSortKeys() {
+        return ImmutableList.copyOf(sortKeys);
+    }
+
+    public boolean isSorted() {
+        return !sortKeys.isEmpty();
+    }
+
+    /**
+     * @param offset index of the first entry, from 0
+     * @param size maximum number of entries
+     */
+    public void setWindow(final int offset, final int size) {
+        checkArgument(offset >= 0, "offset must be positive");
+        checkArgument(size > 0, "size must be strictly positive");
+
+        this.offset = offset;
+
+        this.size = size;
+    }
+
+    public boolean hasWindow() {
+        return offset >= 0;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Optional<Duration> getDeadline() {
+        return Optional.ofNullable(deadline);
+    }
+
+    public void setDeadline(final Duration deadline) {
+        checkArgument(!checkNotNull(deadline).isNegative(), "deadline must be positive");
+
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return whether the search may be sent to a second replica when the
+     * first one is slow to answer
+     */
+    public boolean isHedged() {
+        return hedged;
+    }
+
+    public void setHedged(final boolean hedged) {
+        this.hedged = hedged;
+    }
+
+    /**
+     * @return whether the entries are mapped to plain instances rather than
+     * proxies
+     */
+    public boolean isEager() {
+        return eager;
+    }
+
+    public void setEager(final boolean eager) {
+        this.eager = eager;
+    }
+
+    /**
+     * @param path reference properties separated by dots
+     */
+    public void addFetchPath(final String path) {
+        fetchPaths.add(checkNotNull(path));
+    }
+
+    /**
+     * @return the reference paths resolved for each page of results
+     */
+    public ImmutableList<String> getFetchPaths() {
+        return ImmutableList.copyOf(fetchPaths);
+    }
+
+    public CountStrategy getCountStrategy() {
+        return countStrategy;
+    }
+
+    public void setCountStrategy(final CountStrategy countStrategy) {
+        this.countStrategy = checkNotNull(countStrategy);
+    }
+}
@@ -34,4 +34,10 @@ public interface Session extends Closeable {
 
     <T> Operations<T> getOperations(Class<T> persistentClass);
 
+    /**
+     * Sends the writes queued by the session when the session factory is
+     * configured for write-behind; does nothing otherwise.
+     */
+    void flush();
+
 }
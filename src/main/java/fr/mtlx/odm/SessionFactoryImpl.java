@@ -24,9 +24,7 @@ package fr.mtlx.odm;
  * #L%
  */
 import fr.mtlx.odm.filters.FilterBuilderImpl;
-import com.google.common.base.Joiner;
 import static com.google.common.base.Preconditions.checkNotNull;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
@@ -37,7 +35,9 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import javax.annotation.Nullable;
 import javax.naming.Context;
 import javax.naming.InvalidNameException;
 import javax.naming.ldap.Rdn;
@@ -61,6 +61,14 @@ public abstract class SessionFactoryImpl implements SessionFactory {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
+    private boolean writeBehind = false;
+
+    // built on the first resolution, dropped when a class is mapped
+    private volatile ObjectClassIndex objectClassIndex;
+
+    // answers of isPersistentClass by class, replaced when a class is mapped
+    private volatile ClassValue<Optional<ClassMetadata<?>>> mappedSuperclasses = mappedSuperclasses();
+
     @Override
     @SuppressWarnings("unchecked")
     public <T> ClassMetadata<T> getClassMetadata(Class<T> entityClass) {
@@ -88,7 +96,13 @@ public abstract class SessionFactoryImpl implements SessionFactory {
             return;
         }
 
-        persistentMetadata.put(persistentClass, ClassMetadataBuilder.build(persistentClass));
+        synchronized (persistentMetadata) {
+            persistentMetadata.put(persistentClass, ClassMetadataBuilder.build(persistentClass));
+
+            objectClassIndex = null;
+
+            mappedSuperclasses = mappedSuperclasses();
+        }
 
         addProxyFactory(persistentClass);
     }
@@ -101,58 +115,29 @@ public abstract class SessionFactoryImpl implements SessionFactory {
         addClass(persistentClass);
     }
 
+    /**
+     * Resolves the most specific mapped class whose structural and auxiliary
+     * classes are all among the object classes, see {@link ObjectClassIndex}
+     */
     @Override
     public ClassMetadata<?> getClassMetadata(final String[] objectClasses)
             throws IllegalAccessException, InvocationTargetException,
             ClassNotFoundException {
-        final Set<String> directoryObjectClasses = ImmutableSet.copyOf(objectClasses);
-
-        ClassMetadata<?> metadata = null;
-        int Q = 0;
-
-        // filtre sur la classe structurelle
-        for (Type entryClass : persistentMetadata.keySet()) {
-            final ClassMetadata<?> candidateMetadata = persistentMetadata
-                    .get(entryClass);
+        checkNotNull(objectClasses);
 
-            final Set<String> oc = new ImmutableSet.Builder<String>()
-                    .addAll(candidateMetadata.getAuxiliaryClasses())
-                    .add(candidateMetadata.getStructuralClass()).build();
+        ObjectClassIndex index = objectClassIndex;
 
-            log.debug(
-                    "trying {} ( {}, {} )",
-                    new Object[]{
-                        entryClass,
-                        candidateMetadata.getStructuralClass(),
-                        Joiner.on(", ")
-                        .skipNulls()
-                        .join(candidateMetadata
-                                .getAuxiliaryClasses())});
+        if (index == null) {
+            synchronized (persistentMetadata) {
+                index = objectClassIndex;
 
-            if (directoryObjectClasses.containsAll(oc)) {
-                final int q = oc.size();
-
-                log.debug("match q = {}", q);
-
-                if (q > Q) {
-                    Q = q;
-
-                    if (metadata != null) {
-                        if (metadata.getPersistentClass().isAssignableFrom(
-                                candidateMetadata.getPersistentClass())) {
-                            metadata = candidateMetadata;
-                        }
-                    } else {
-                        metadata = candidateMetadata;
-                    }
+                if (index == null) {
+                    objectClassIndex = index = new ObjectClassIndex(persistentMetadata.values());
                 }
             }
-
-            if (Q == directoryObjectClasses.size()) {
-                break;
-            }
         }
-        return metadata;
+
+        return index.resolve(objectClasses);
     }
 
     @Override
@@ -166,9 +151,36 @@ public abstract class SessionFactoryImpl implements SessionFactory {
 
     @Override
     public boolean isPersistentClass(Class<?> clazz) {
+        return getMostSpecificMetadata(clazz) != null;
+    }
+
+    /**
+     * @return the metadata of the class or of its closest mapped super
+     * class, null if it does not extend a persistent class
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable <T> ClassMetadata<? super T> getMostSpecificMetadata(final Class<T> clazz) {
         checkNotNull(clazz);
 
-        return persistentMetadata.keySet().stream().anyMatch(t -> t.isAssignableFrom(clazz));
+        return (ClassMetadata<? super T>) mappedSuperclasses.get(clazz).orElse(null);
+    }
+
+    private ClassValue<Optional<ClassMetadata<?>>> mappedSuperclasses() {
+        return new ClassValue<Optional<ClassMetadata<?>>>() {
+
+            @Override
+            protected Optional<ClassMetadata<?>> computeValue(final Class<?> type) {
+                for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                    final ClassMetadata<?> metadata = persistentMetadata.get(c);
+
+                    if (metadata != null) {
+                        return Optional.of(metadata);
+                    }
+                }
+
+                return Optional.empty();
+            }
+        };
     }
 
     @Override
@@ -272,4 +284,16 @@ public abstract class SessionFactoryImpl implements SessionFactory {
     public void setOperationalAttributes(Set<String> operationalAttributes) {
         this.operationalAttributes = operationalAttributes;
     }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * When set, sessions queue bind, modify and unbind and write them on
+     * flush or close, one operation per entry.
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
 }
@@ -61,6 +61,8 @@ public abstract class SessionImpl implements Session {
 
     private final PersistentCache cache;
 
+    private final UnitOfWork unitOfWork = new UnitOfWork();
+
     public PersistentCache getCache() {
         return cache;
     }
@@ -83,9 +85,28 @@ public abstract class SessionImpl implements Session {
             return false;
     }
 
+    public UnitOfWork getUnitOfWork() {
+        return unitOfWork;
+    }
+
+    public boolean isWriteBehind() {
+        return getSessionFactory().isWriteBehind();
+    }
+
+    @Override
+    public void flush() {
+        unitOfWork.flush();
+    }
+
     @Override
     public void close() {
-        getCache().clear();
+        try {
+            flush();
+        } finally {
+            unitOfWork.clear();
+
+            getCache().clear();
+        }
     }
 
     private <T> Optional<Name> extractDn(final T obj) {
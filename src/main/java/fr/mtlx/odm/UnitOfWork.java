@@ -0,0 +1,222 @@
+package fr.mtlx.odm;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.Name;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Writes queued by a session until it is flushed.
+ *
+ * Successive writes to the same entry are coalesced into a single operation:
+ * <ul>
+ * <li>bind then modify: bind (the entry is mapped at flush time)</li>
+ * <li>bind then unbind: nothing</li>
+ * <li>modify then unbind: unbind</li>
+ * <li>unbind then bind: unbind followed by bind</li>
+ * </ul>
+ *
+ * Flushing adds parents before their children, then sends the
+ * modifications, then deletes children before their parents.
+ */
+public class UnitOfWork {
+
+    enum Kind {
+
+        BIND, MODIFY, UNBIND, REPLACE
+    }
+
+    static class Pending {
+
+        private Kind kind;
+
+        private Object entry;
+
+        private final Name dn;
+
+        private final OperationsImpl<Object> operations;
+
+        Pending(final Kind kind, final Name dn, final Object entry, final OperationsImpl<Object> operations) {
+            this.kind = kind;
+            this.dn = dn;
+            this.entry = entry;
+            this.operations = operations;
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        Name getDn() {
+            return dn;
+        }
+
+        private void write() {
+            switch (kind) {
+                case BIND:
+                    operations.doBind(entry);
+                    break;
+                case MODIFY:
+                    operations.doModify(entry);
+                    break;
+                case UNBIND:
+                    operations.doUnbind(dn);
+                    break;
+                case REPLACE:
+                    operations.doUnbind(dn);
+
+                    // the entry is gone, a failing bind must not be retried as a replace
+                    kind = Kind.BIND;
+
+                    operations.doBind(entry);
+                    break;
+            }
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(UnitOfWork.class);
+
+    private static final Comparator<Pending> PARENTS_FIRST = Comparator.comparingInt(p -> p.getDn().size());
+
+    private final Map<Name, Pending> pending = Maps.newLinkedHashMap();
+
+    <T> void bind(final Name dn, final T entry, final OperationsImpl<T> operations) {
+        final Pending previous = pending.get(checkNotNull(dn));
+
+        if (previous == null) {
+            pending.put(dn, new Pending(Kind.BIND, dn, entry, cast(operations)));
+        } else if (previous.kind == Kind.UNBIND) {
+            pending.put(dn, new Pending(Kind.REPLACE, dn, entry, cast(operations)));
+        } else {
+            throw new IllegalStateException(String.format("%s is already bound", dn));
+        }
+    }
+
+    <T> void modify(final Name dn, final T entry, final OperationsImpl<T> operations) {
+        final Pending previous = pending.get(checkNotNull(dn));
+
+        if (previous == null) {
+            pending.put(dn, new Pending(Kind.MODIFY, dn, entry, cast(operations)));
+        } else if (previous.kind == Kind.UNBIND) {
+            throw new IllegalStateException(String.format("%s is unbound", dn));
+        } else {
+            // a pending bind or modify writes the latest state of the entry
+            previous.entry = entry;
+        }
+    }
+
+    <T> void unbind(final Name dn, final OperationsImpl<T> operations) {
+        final Pending previous = pending.remove(checkNotNull(dn));
+
+        if (previous == null || previous.kind == Kind.MODIFY || previous.kind == Kind.REPLACE) {
+            pending.put(dn, new Pending(Kind.UNBIND, dn, null, cast(operations)));
+        } else if (previous.kind == Kind.UNBIND) {
+            throw new IllegalStateException(String.format("%s is already unbound", dn));
+        }
+        // a pending bind is simply forgotten
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> OperationsImpl<Object> cast(final OperationsImpl<T> operations) {
+        return (OperationsImpl<Object>) checkNotNull(operations);
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Sends the pending writes; when one of them fails, it and the writes
+     * following it stay queued.
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("flushing {} writes", pending.size());
+        }
+
+        final List<Pending> additions = Lists.newArrayList();
+        final List<Pending> modifications = Lists.newArrayList();
+        final List<Pending> deletions = Lists.newArrayList();
+
+        for (Pending write : pending.values()) {
+            switch (write.kind) {
+                case BIND:
+                case REPLACE:
+                    additions.add(write);
+                    break;
+                case MODIFY:
+                    modifications.add(write);
+                    break;
+                case UNBIND:
+                    deletions.add(write);
+                    break;
+            }
+        }
+
+        additions.sort(PARENTS_FIRST);
+        deletions.sort(PARENTS_FIRST.reversed());
+
+        write(additions);
+        write(modifications);
+        write(deletions);
+    }
+
+    private void write(final List<Pending> writes) {
+        for (Pending write : writes) {
+            write.write();
+
+            pending.remove(write.getDn());
+        }
+    }
+
+    /**
+     * Forgets the pending writes
+     */
+    public void clear() {
+        pending.clear();
+    }
+
+    List<Pending> getPending() {
+        return Lists.newArrayList(pending.values());
+    }
+}
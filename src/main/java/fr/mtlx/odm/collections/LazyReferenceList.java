@@ -0,0 +1,180 @@
+package fr.mtlx.odm.collections;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import javax.naming.Name;
+import javax.naming.ldap.LdapName;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import fr.mtlx.odm.Session;
+
+/**
+ * List of referenced entries resolved in batches, as they are read.
+ *
+ * Membership checks and edits work on the DNs and resolve nothing: the
+ * previous element returned by {@link #set(int, Object)} and
+ * {@link #remove(int)} is null unless it was already resolved.
+ */
+public class LazyReferenceList<E> extends AbstractList<E> implements ReferenceCollection<E>, RandomAccess {
+
+    private final List<LdapName> dns;
+
+    private final References<E> references;
+
+    /**
+     * @param batchSize number of entries resolved together
+     */
+    public LazyReferenceList(final Class<E> type, final Collection<LdapName> dns, final Session session,
+            final int batchSize) {
+        this.dns = Lists.newArrayList(checkNotNull(dns));
+
+        this.references = new References<>(type, session, batchSize);
+    }
+
+    @Override
+    public Collection<LdapName> getDns() {
+        return ImmutableList.copyOf(dns);
+    }
+
+    @Override
+    public boolean containsDn(final Name dn) {
+        return dns.contains(references.dn(dn));
+    }
+
+    @Override
+    public E get(final int index) {
+        return references.get(dns, index);
+    }
+
+    @Override
+    public int size() {
+        return dns.size();
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public int indexOf(final Object o) {
+        final LdapName dn = references.dn(o);
+
+        return dn != null ? dns.indexOf(dn) : -1;
+    }
+
+    @Override
+    public int lastIndexOf(final Object o) {
+        final LdapName dn = references.dn(o);
+
+        return dn != null ? dns.lastIndexOf(dn) : -1;
+    }
+
+    @Override
+    public E set(final int index, final E element) {
+        final E previous = references.getIfResolved(dns.get(index));
+
+        final LdapName dn = references.checkedDn(element);
+
+        references.put(dn, element);
+
+        dns.set(index, dn);
+
+        return previous;
+    }
+
+    @Override
+    public void add(final int index, final E element) {
+        final LdapName dn = references.checkedDn(element);
+
+        references.put(dn, element);
+
+        dns.add(index, dn);
+
+        modCount++;
+    }
+
+    @Override
+    public E remove(final int index) {
+        final E previous = references.getIfResolved(dns.remove(index));
+
+        modCount++;
+
+        return previous;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        final int index = indexOf(o);
+
+        if (index < 0) {
+            return false;
+        }
+
+        dns.remove(index);
+
+        modCount++;
+
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+        final Set<LdapName> removed = references.dns(c);
+
+        return edited(dns.removeIf(removed::contains));
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+        final Set<LdapName> retained = references.dns(c);
+
+        return edited(dns.removeIf(dn -> !retained.contains(dn)));
+    }
+
+    private boolean edited(final boolean edited) {
+        if (edited) {
+            modCount++;
+        }
+
+        return edited;
+    }
+
+    @Override
+    public void clear() {
+        dns.clear();
+
+        modCount++;
+    }
+}
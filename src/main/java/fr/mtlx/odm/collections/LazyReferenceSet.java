@@ -0,0 +1,178 @@
+package fr.mtlx.odm.collections;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.naming.Name;
+import javax.naming.ldap.LdapName;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import fr.mtlx.odm.Session;
+
+/**
+ * Set of referenced entries resolved in batches, as they are iterated.
+ *
+ * Membership checks and edits work on the DNs and resolve nothing.
+ */
+public class LazyReferenceSet<E> extends AbstractSet<E> implements ReferenceCollection<E> {
+
+    private final Set<LdapName> dns;
+
+    private final References<E> references;
+
+    private int modCount;
+
+    /**
+     * @param batchSize number of entries resolved together
+     */
+    public LazyReferenceSet(final Class<E> type, final Collection<LdapName> dns, final Session session,
+            final int batchSize) {
+        this.dns = Sets.newLinkedHashSet(dns);
+
+        this.references = new References<>(type, session, batchSize);
+    }
+
+    @Override
+    public Collection<LdapName> getDns() {
+        return ImmutableSet.copyOf(dns);
+    }
+
+    @Override
+    public boolean containsDn(final Name dn) {
+        return dns.contains(references.dn(dn));
+    }
+
+    @Override
+    public int size() {
+        return dns.size();
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        final LdapName dn = references.dn(o);
+
+        return dn != null && dns.contains(dn);
+    }
+
+    @Override
+    public boolean add(final E element) {
+        final LdapName dn = references.checkedDn(element);
+
+        references.put(dn, element);
+
+        modCount++;
+
+        return dns.add(dn);
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        final LdapName dn = references.dn(o);
+
+        modCount++;
+
+        return dn != null && dns.remove(dn);
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+        final Set<LdapName> removed = references.dns(c);
+
+        return edited(dns.removeIf(removed::contains));
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+        final Set<LdapName> retained = references.dns(c);
+
+        return edited(dns.removeIf(dn -> !retained.contains(dn)));
+    }
+
+    private boolean edited(final boolean edited) {
+        if (edited) {
+            modCount++;
+        }
+
+        return edited;
+    }
+
+    @Override
+    public void clear() {
+        dns.clear();
+
+        modCount++;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        // positional access for the batches
+        final List<LdapName> order = Lists.newArrayList(dns);
+
+        return new Iterator<E>() {
+
+            private int next = 0;
+
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < order.size();
+            }
+
+            @Override
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return references.get(order, next++);
+            }
+
+            @Override
+            public void remove() {
+                checkState(next > 0, "next() was not called");
+
+                dns.remove(order.get(next - 1));
+
+                expectedModCount = ++modCount;
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package fr.mtlx.odm.collections;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import java.util.Collection;
+
+import javax.naming.Name;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Collection of referenced entries holding their DNs, and resolving the
+ * entries only when they are read.
+ *
+ * <code>size()</code>, <code>contains</code> (of an entry or of a DN) and
+ * {@link #getDns()} never resolve anything.
+ */
+public interface ReferenceCollection<E> extends Collection<E> {
+
+    /**
+     * @return the DNs of the entries, in the order of the collection
+     */
+    Collection<LdapName> getDns();
+
+    boolean containsDn(Name dn);
+}
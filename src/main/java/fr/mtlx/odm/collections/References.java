@@ -0,0 +1,157 @@
+package fr.mtlx.odm.collections;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+import javax.naming.Name;
+import javax.naming.ldap.LdapName;
+
+import org.springframework.ldap.support.LdapUtils;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import fr.mtlx.odm.ClassAssistant;
+import fr.mtlx.odm.Operations;
+import fr.mtlx.odm.Session;
+import fr.mtlx.odm.converters.ConvertionException;
+
+/**
+ * Referenced entries resolved so far, shared by the lazy collections
+ */
+final class References<E> {
+
+    private final Class<E> type;
+
+    private final Operations<E> operations;
+
+    private final ClassAssistant<E> assistant;
+
+    private final int batchSize;
+
+    private final Map<Name, E> resolved = Maps.newHashMap();
+
+    References(final Class<E> type, final Session session, final int batchSize) {
+        checkArgument(batchSize > 0, "batchSize must be positive");
+
+        this.type = checkNotNull(type);
+
+        this.operations = session.getOperations(type);
+
+        this.assistant = new ClassAssistant<>(session.getSessionFactory().getClassMetadata(type));
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the entry at the index, resolving it along with the next
+     * unresolved ones
+     */
+    E get(final List<LdapName> dns, final int index) {
+        final LdapName dn = dns.get(index);
+
+        E entry = resolved.get(dn);
+
+        if (entry == null) {
+            final List<LdapName> batch = dns.subList(index, Math.min(dns.size(), index + batchSize)).stream()
+                    .filter(name -> !resolved.containsKey(name)).collect(Collectors.toList());
+
+            resolved.putAll(operations.lookupAll(batch));
+
+            entry = resolved.get(dn);
+
+            if (entry == null) {
+                throw new ConvertionException(String.format("%s not found", dn));
+            }
+        }
+
+        return entry;
+    }
+
+    void put(final LdapName dn, final E entry) {
+        resolved.put(dn, entry);
+    }
+
+    /**
+     * @return the entry if it was already resolved, null otherwise
+     */
+    @Nullable
+    E getIfResolved(final LdapName dn) {
+        return resolved.get(dn);
+    }
+
+    /**
+     * @return the DNs of the entries and DNs of a collection, see
+     * {@link #dn(Object)}
+     */
+    Set<LdapName> dns(final Collection<?> elements) {
+        final Set<LdapName> dns = Sets.newHashSet();
+
+        for (Object element : elements) {
+            final LdapName dn = dn(element);
+
+            if (dn != null) {
+                dns.add(dn);
+            }
+        }
+
+        return dns;
+    }
+
+    /**
+     * @return the DN of an entry, or of a DN, null for any other object
+     */
+    @Nullable
+    LdapName dn(@Nullable final Object element) {
+        if (element instanceof Name) {
+            return LdapUtils.newLdapName((Name) element);
+        } else if (type.isInstance(element)) {
+            return assistant.getIdentifier(element);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the DN of an element added to a collection
+     */
+    LdapName checkedDn(final E element) {
+        final LdapName dn = dn(checkNotNull(element, "null reference"));
+
+        if (dn == null) {
+            throw new IllegalArgumentException(String.format("%s has no DN", element));
+        }
+
+        return dn;
+    }
+}
@@ -1,6 +1,8 @@
 package fr.mtlx.odm.converters;
 
 import java.lang.reflect.Type;
+import java.time.Instant;
+import java.time.OffsetDateTime;
 import java.util.Date;
 
 import javax.naming.Name;
@@ -37,7 +39,9 @@ public final class DefaultConverters {
             .put(byte[].class, new IdentityConverter<>(byte[].class))
             .put(Name.class, new IdentityConverter<>(Name.class))
             .put(LdapName.class, new IdentityConverter<>(LdapName.class))
-            .put(Date.class, new IdentityConverter<>(Date.class))
+            .put(Date.class, new DateConverter())
+            .put(Instant.class, new InstantConverter())
+            .put(OffsetDateTime.class, new IdentityConverter<>(OffsetDateTime.class))
             .put(Long.TYPE, new IdentityConverter<>(Long.TYPE))
             .put(Long.class, new IdentityConverter<>(Long.class)).build();
 
@@ -55,6 +59,8 @@ public final class DefaultConverters {
             .put(Name.class, "1.3.6.1.4.1.1466.115.121.1.12")
             .put(LdapName.class, "1.3.6.1.4.1.1466.115.121.1.12")
             .put(Date.class, "1.3.6.1.4.1.1466.115.121.1.24")
+            .put(Instant.class, "1.3.6.1.4.1.1466.115.121.1.24")
+            .put(OffsetDateTime.class, "1.3.6.1.4.1.1466.115.121.1.24")
             .put(Long.TYPE, "1.3.6.1.4.1.1466.115.121.1.36")
             .put(Long.class, "1.3.6.1.4.1.1466.115.121.1.36").build();
 }
@@ -24,35 +24,182 @@ package fr.mtlx.odm.converters;
  * #L%
  */
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.SimpleTimeZone;
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * GeneralizedTime (RFC 4517): <code>yyyyMMddHH[mm[ss]][(.|,)fraction](Z|(+|-)HH[mm])</code>.
+ *
+ * The fraction applies to the last unit present, a leap second is read as
+ * the first second of the next minute. Values are written in UTC, with the
+ * fraction of second when there is one.
+ *
+ * Parsed and formatted by hand: instances are thread safe and convert
+ * without intermediate objects.
+ */
+public class TimeConverter extends SyntaxConverter<String, OffsetDateTime> {
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	private static final long NANOS_PER_MINUTE = 60 * NANOS_PER_SECOND;
+
+	private static final long NANOS_PER_HOUR = 60 * NANOS_PER_MINUTE;
 
-public class TimeConverter extends SyntaxConverter<String, Date> {
 	public TimeConverter() {
-		super(String.class, Date.class);
+		super(String.class, OffsetDateTime.class);
 	}
 
-	public final static SimpleDateFormat generalizedTime;
-
 	@Override
-	public String to(final Date object) throws ConvertionException {
-		return generalizedTime.format(object);
+	public String to(final OffsetDateTime object) throws ConvertionException {
+		final OffsetDateTime utc = object.withOffsetSameInstant(ZoneOffset.UTC);
+
+		if (utc.getYear() < 0 || utc.getYear() > 9999)
+			throw new ConvertionException("year out of range: " + utc.getYear());
+
+		final char[] chars = new char[25];
+
+		int length = digits(chars, 0, utc.getYear(), 4);
+		length = digits(chars, length, utc.getMonthValue(), 2);
+		length = digits(chars, length, utc.getDayOfMonth(), 2);
+		length = digits(chars, length, utc.getHour(), 2);
+		length = digits(chars, length, utc.getMinute(), 2);
+		length = digits(chars, length, utc.getSecond(), 2);
+
+		int nanos = utc.getNano();
+
+		if (nanos > 0) {
+			chars[length++] = '.';
+
+			int width = 9;
+
+			while (nanos % 10 == 0) {
+				nanos /= 10;
+				width--;
+			}
+
+			length = digits(chars, length, nanos, width);
+		}
+
+		chars[length++] = 'Z';
+
+		return new String(chars, 0, length);
+	}
+
+	private static int digits(final char[] chars, final int offset, int value, final int width) {
+		for (int i = offset + width - 1; i >= offset; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+
+		return offset + width;
 	}
 
 	@Override
-	public Date from(String value) throws ConvertionException {
+	public OffsetDateTime from(final String value) throws ConvertionException {
+		final int length = value.length();
+
+		if (length < 11 || !isDigits(value, 0, 10))
+			throw invalid(value);
+
+		final int year = number(value, 0, 4);
+		final int month = number(value, 4, 2);
+		final int day = number(value, 6, 2);
+		final int hour = number(value, 8, 2);
+
+		int minute = 0;
+		int second = 0;
+		// of the last unit present, for its fraction
+		long unit = NANOS_PER_HOUR;
+		int position = 10;
+
+		if (isDigits(value, position, 2)) {
+			minute = number(value, position, 2);
+			unit = NANOS_PER_MINUTE;
+			position += 2;
+
+			if (isDigits(value, position, 2)) {
+				second = number(value, position, 2);
+				unit = NANOS_PER_SECOND;
+				position += 2;
+			}
+		}
+
+		long fraction = 0;
+
+		if (position < length && (value.charAt(position) == '.' || value.charAt(position) == ',')) {
+			position++;
+
+			final int start = position;
+
+			for (long scale = unit / 10; position < length && isDigit(value.charAt(position)); position++, scale /= 10)
+				// digits past the nanosecond are dropped
+				fraction += (value.charAt(position) - '0') * scale;
+
+			if (position == start)
+				throw invalid(value);
+		}
+
+		final ZoneOffset offset;
+
+		if (position == length - 1 && value.charAt(position) == 'Z') {
+			offset = ZoneOffset.UTC;
+		} else if (position < length && (value.charAt(position) == '+' || value.charAt(position) == '-')
+				&& (length - position == 3 || length - position == 5) && isDigits(value, position + 1, length - position - 1)) {
+			final int sign = value.charAt(position) == '-' ? -1 : 1;
+
+			final int offsetMinutes = length - position == 5 ? number(value, position + 3, 2) : 0;
+
+			try {
+				offset = ZoneOffset.ofHoursMinutes(sign * number(value, position + 1, 2), sign * offsetMinutes);
+			} catch (DateTimeException e) {
+				throw new ConvertionException(value, e);
+			}
+		} else {
+			throw invalid(value);
+		}
+
+		// 60 is a leap second
+		if (second > 60)
+			throw invalid(value);
+
 		try {
-			return (Date) generalizedTime.parseObject(value);
-		} catch (ParseException e) {
-			throw new ConvertionException(e);
+			if (second < 60 && fraction < NANOS_PER_SECOND)
+				return OffsetDateTime.of(year, month, day, hour, minute, second, (int) fraction, offset);
+
+			// fraction of minute or hour, or leap second
+			return OffsetDateTime.of(year, month, day, hour, minute, second == 60 ? 59 : second, 0, offset)
+					.plusNanos(fraction + (second == 60 ? NANOS_PER_SECOND : 0));
+		} catch (DateTimeException e) {
+			throw new ConvertionException(value, e);
+		}
+	}
+
+	private static boolean isDigit(final char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isDigits(final String value, final int offset, final int count) {
+		if (offset + count > value.length())
+			return false;
+
+		for (int i = offset; i < offset + count; i++) {
+			if (!isDigit(value.charAt(i)))
+				return false;
 		}
+
+		return true;
 	}
 
-	static {
-		generalizedTime = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
+	private static int number(final String value, final int offset, final int count) {
+		int number = 0;
+
+		for (int i = offset; i < offset + count; i++)
+			number = number * 10 + value.charAt(i) - '0';
+
+		return number;
+	}
 
-		generalizedTime.setTimeZone(new SimpleTimeZone(0, "Z"));
+	private static ConvertionException invalid(final String value) {
+		return new ConvertionException("invalid generalized time: " + value);
 	}
 }
@@ -0,0 +1,117 @@
+package fr.mtlx.odm.export;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Base class of the writers encoding entries to a channel through a
+ * direct buffer.
+ */
+public abstract class ChannelEntryWriter implements EntryWriter {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 << 10;
+
+    private final WritableByteChannel channel;
+
+    private final ByteBuffer buffer;
+
+    protected ChannelEntryWriter(final WritableByteChannel channel, final int bufferSize) {
+        checkArgument(bufferSize > 0, "bufferSize must be positive");
+
+        this.channel = checkNotNull(channel, "channel is null");
+
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    protected static FileChannel open(final Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    protected final void append(final String s) throws IOException {
+        append(s.getBytes(UTF_8));
+    }
+
+    protected final void append(final char c) throws IOException {
+        if (c < 0x80) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+
+            buffer.put((byte) c);
+        } else {
+            append(String.valueOf(c));
+        }
+    }
+
+    protected final void append(final byte[] bytes) throws IOException {
+        int offset = 0;
+
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+
+            final int n = Math.min(buffer.remaining(), bytes.length - offset);
+
+            buffer.put(bytes, offset, n);
+
+            offset += n;
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package fr.mtlx.odm.export;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+/**
+ * Writes one JSON object per line:
+ *
+ * <pre>
+ * {"dn":"cn=alex,ou=personnes","attributes":{"cn":["alex"],"userPassword;base64":["c2VjcmV0"]}}
+ * </pre>
+ *
+ * Binary values are base64 encoded, under the attribute name suffixed with
+ * <code>;base64</code>.
+ */
+public class JsonLinesEntryWriter extends ChannelEntryWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public JsonLinesEntryWriter(final Path path) throws IOException {
+        this(open(path), DEFAULT_BUFFER_SIZE);
+    }
+
+    public JsonLinesEntryWriter(final WritableByteChannel channel, final int bufferSize) {
+        super(channel, bufferSize);
+    }
+
+    @Override
+    public void write(final String dn, final Attributes attributes) throws IOException {
+        append("{\"dn\":");
+        writeString(dn);
+        append(",\"attributes\":{");
+
+        boolean first = true;
+
+        try {
+            for (NamingEnumeration<? extends Attribute> it = attributes.getAll(); it.hasMore();) {
+                final Attribute attribute = it.next();
+
+                if (attribute.size() == 0) {
+                    continue;
+                }
+
+                if (!first) {
+                    append(',');
+                }
+
+                first = false;
+
+                final boolean binary = attribute.get() instanceof byte[];
+
+                writeString(binary ? attribute.getID() + ";base64" : attribute.getID());
+                append(":[");
+
+                for (int i = 0; i < attribute.size(); i++) {
+                    if (i > 0) {
+                        append(',');
+                    }
+
+                    final Object value = attribute.get(i);
+
+                    if (value instanceof byte[]) {
+                        append('"');
+                        append(Base64.getEncoder().encode((byte[]) value));
+                        append('"');
+                    } else {
+                        writeString(String.valueOf(value));
+                    }
+                }
+
+                append(']');
+            }
+        } catch (NamingException e) {
+            throw new IOException(e);
+        }
+
+        append("}}\n");
+    }
+
+    private void writeString(final String s) throws IOException {
+        append('"');
+
+        int start = 0;
+
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+
+            if (c < 0x20 || c == '"' || c == '\\') {
+                append(s.substring(start, i));
+
+                switch (c) {
+                    case '"':
+                        append("\\\"");
+                        break;
+                    case '\\':
+                        append("\\\\");
+                        break;
+                    case '\n':
+                        append("\\n");
+                        break;
+                    case '\r':
+                        append("\\r");
+                        break;
+                    case '\t':
+                        append("\\t");
+                        break;
+                    default:
+                        append("\\u00");
+                        append(HEX[c >> 4]);
+                        append(HEX[c & 0xf]);
+                }
+
+                start = i + 1;
+            }
+        }
+
+        append(s.substring(start));
+        append('"');
+    }
+}
@@ -0,0 +1,118 @@
+package fr.mtlx.odm.export;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+/**
+ * Writes entries as LDIF content records (RFC 2849); values which are not
+ * safe strings are base64 encoded. Lines are not folded.
+ */
+public class LdifEntryWriter extends ChannelEntryWriter {
+
+    public LdifEntryWriter(final Path path) throws IOException {
+        this(open(path), DEFAULT_BUFFER_SIZE);
+    }
+
+    public LdifEntryWriter(final WritableByteChannel channel, final int bufferSize) throws IOException {
+        super(channel, bufferSize);
+
+        append("version: 1\n");
+    }
+
+    @Override
+    public void write(final String dn, final Attributes attributes) throws IOException {
+        append('\n');
+
+        writeValue("dn", dn);
+
+        try {
+            for (NamingEnumeration<? extends Attribute> it = attributes.getAll(); it.hasMore();) {
+                final Attribute attribute = it.next();
+
+                for (NamingEnumeration<?> values = attribute.getAll(); values.hasMore();) {
+                    writeValue(attribute.getID(), values.next());
+                }
+            }
+        } catch (NamingException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeValue(final String attributeId, final Object value) throws IOException {
+        append(attributeId);
+
+        if (value instanceof byte[]) {
+            append(":: ");
+            append(Base64.getEncoder().encode((byte[]) value));
+        } else {
+            final String s = String.valueOf(value);
+
+            if (isSafe(s)) {
+                append(": ");
+                append(s);
+            } else {
+                append(":: ");
+                append(Base64.getEncoder().encode(s.getBytes(UTF_8)));
+            }
+        }
+
+        append('\n');
+    }
+
+    /**
+     * SAFE-STRING of RFC 2849, with no trailing space
+     */
+    static boolean isSafe(final String s) {
+        if (s.isEmpty()) {
+            return true;
+        }
+
+        final char first = s.charAt(0);
+
+        if (first == ' ' || first == ':' || first == '<' || s.charAt(s.length() - 1) == ' ') {
+            return false;
+        }
+
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+
+            if (c == 0 || c == '\n' || c == '\r' || c > 0x7f) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -32,7 +32,7 @@ public class AndFilter extends CompositeFilter {
             if (f instanceof AndFilter) {
                 return ((CompositeFilter) f).filters.stream();
             } else {
-                return f;
+                return Stream.of(f);
             }
         }));
     }
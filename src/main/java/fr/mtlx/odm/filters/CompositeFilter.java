@@ -2,6 +2,7 @@ package fr.mtlx.odm.filters;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.ImmutableList;
+import java.util.stream.Stream;
 
 public abstract class CompositeFilter implements Filter {
 
@@ -11,6 +12,10 @@ public abstract class CompositeFilter implements Filter {
         this.filters = ImmutableList.copyOf(checkNotNull(filters));
     }
 
+    public CompositeFilter(Stream<Filter> filters) {
+        this.filters = ImmutableList.copyOf(checkNotNull(filters).iterator());
+    }
+
     @Override
     public void encode(final StringBuilder sb) {
         for(final Filter filter : filters) {
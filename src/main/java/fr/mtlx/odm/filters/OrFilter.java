@@ -32,7 +32,7 @@ public class OrFilter extends CompositeFilter {
             if (f instanceof OrFilter) {
                 return ((CompositeFilter) f).filters.stream();
             } else {
-                return f;
+                return Stream.of(f);
             }
         }));
     }
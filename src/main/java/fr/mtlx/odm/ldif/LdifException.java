@@ -0,0 +1,50 @@
+package fr.mtlx.odm.ldif;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+@SuppressWarnings("serial")
+public class LdifException extends RuntimeException {
+
+    private final long line;
+
+    public LdifException(String message, long line) {
+        super(String.format("%s (line %d)", message, line));
+
+        this.line = line;
+    }
+
+    public LdifException(String message, long line, Throwable cause) {
+        super(String.format("%s (line %d)", message, line), cause);
+
+        this.line = line;
+    }
+
+    /**
+     * @return the line where the error was found
+     */
+    public long getLine() {
+        return line;
+    }
+}
@@ -0,0 +1,314 @@
+package fr.mtlx.odm.ldif;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.naming.InvalidNameException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Reads the entries of an LDIF file (RFC 2849) one at a time.
+ *
+ * The file is mapped in memory a window at a time, so that files larger
+ * than the heap, or than the address space, can be read; only the current
+ * record is held on the heap.
+ *
+ * Change records other than <code>changetype: add</code> and values given by
+ * URL are not supported.
+ */
+public class LdifReader implements Iterator<LdifRecord>, Closeable {
+
+    static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+
+    private long windowEnd;
+
+    private byte[] line = new byte[256];
+
+    private int length;
+
+    private long lineNumber;
+
+    private long lineStart;
+
+    private LdifRecord next;
+
+    public LdifReader(final Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    LdifReader(final Path path, final int windowSize) throws IOException {
+        checkArgument(windowSize > 0, "windowSize must be positive");
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        this.size = channel.size();
+
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return the remaining records; closing the stream closes the reader
+     */
+    public Stream<LdifRecord> records() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+                false).onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readRecord();
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public LdifRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final LdifRecord record = next;
+
+        next = null;
+
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+
+        channel.close();
+    }
+
+    private LdifRecord readRecord() {
+        String current;
+
+        // blank lines, comments and the version line
+        do {
+            current = readLine();
+
+            if (current == null) {
+                return null;
+            }
+        } while (current.isEmpty() || current.startsWith("#") || (current.startsWith("version:") && lineStart == 1));
+
+        final long start = lineStart;
+
+        if (!current.regionMatches(true, 0, "dn:", 0, 3)) {
+            throw new LdifException("dn expected", start);
+        }
+
+        final LdapName dn;
+
+        try {
+            dn = new LdapName(value(current, 2, start).toString());
+        } catch (InvalidNameException e) {
+            throw new LdifException("invalid dn", start, e);
+        }
+
+        final Attributes attributes = new BasicAttributes(true);
+
+        while ((current = readLine()) != null && !current.isEmpty()) {
+            if (current.startsWith("#")) {
+                continue;
+            }
+
+            final int colon = current.indexOf(':');
+
+            if (colon <= 0) {
+                throw new LdifException("malformed line", lineStart);
+            }
+
+            final String attributeId = current.substring(0, colon);
+
+            final Object value = value(current, colon, start);
+
+            if (attributeId.equalsIgnoreCase("changetype")) {
+                if (!"add".equalsIgnoreCase(value.toString())) {
+                    throw new LdifException("unsupported changetype " + value, start);
+                }
+
+                continue;
+            }
+
+            final Attribute attribute = attributes.get(attributeId);
+
+            if (attribute != null) {
+                attribute.add(value);
+            } else {
+                attributes.put(new BasicAttribute(attributeId, value));
+            }
+        }
+
+        return new LdifRecord(dn, attributes, start);
+    }
+
+    /**
+     * @param colon index of the separator between the attribute type and
+     * its value
+     */
+    private Object value(final String current, final int colon, final long start) {
+        int i = colon + 1;
+
+        if (i < current.length() && current.charAt(i) == ':') {
+            final byte[] decoded;
+
+            try {
+                decoded = Base64.getDecoder().decode(current.substring(i + 1).trim());
+            } catch (IllegalArgumentException e) {
+                throw new LdifException("invalid base64 value", lineStart, e);
+            }
+
+            // dn and rdn values are UTF-8 strings
+            return colon == 2 && current.regionMatches(true, 0, "dn", 0, 2) ? new String(decoded, UTF_8) : decoded;
+        } else if (i < current.length() && current.charAt(i) == '<') {
+            throw new LdifException("values given by URL are not supported", start);
+        }
+
+        while (i < current.length() && current.charAt(i) == ' ') {
+            i++;
+        }
+
+        return current.substring(i);
+    }
+
+    /**
+     * @return the next logical line, continuation lines unfolded, or null
+     * at the end of the file
+     */
+    private String readLine() {
+        length = 0;
+
+        lineStart = lineNumber + 1;
+
+        int b = read();
+
+        if (b == -1) {
+            return null;
+        }
+
+        while (true) {
+            while (b != -1 && b != '\n') {
+                append(b);
+
+                b = read();
+            }
+
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+
+            lineNumber++;
+
+            if (peek() != ' ') {
+                break;
+            }
+
+            // continuation: drop the leading space
+            read();
+
+            b = read();
+        }
+
+        // folding may split a multibyte character, decode the whole line
+        return new String(line, 0, length, UTF_8);
+    }
+
+    private void append(final int b) {
+        if (length == line.length) {
+            line = Arrays.copyOf(line, length * 2);
+        }
+
+        line[length++] = (byte) b;
+    }
+
+    private int read() {
+        return ensureAvailable() ? window.get() & 0xff : -1;
+    }
+
+    private int peek() {
+        return ensureAvailable() ? window.get(window.position()) & 0xff : -1;
+    }
+
+    private boolean ensureAvailable() {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+
+        if (windowEnd >= size) {
+            return false;
+        }
+
+        final long remaining = size - windowEnd;
+
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowEnd, Math.min(windowSize, remaining));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        windowEnd += window.capacity();
+
+        return true;
+    }
+}
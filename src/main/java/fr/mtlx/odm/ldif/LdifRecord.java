@@ -0,0 +1,70 @@
+package fr.mtlx.odm.ldif;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.naming.Name;
+import javax.naming.directory.Attributes;
+
+/**
+ * An entry read from an LDIF file; values are <code>String</code>s, or
+ * <code>byte[]</code> when they were base64 encoded.
+ */
+public class LdifRecord {
+
+    private final Name dn;
+
+    private final Attributes attributes;
+
+    private final long line;
+
+    LdifRecord(final Name dn, final Attributes attributes, final long line) {
+        this.dn = checkNotNull(dn);
+
+        this.attributes = checkNotNull(attributes);
+
+        this.line = line;
+    }
+
+    public Name getDn() {
+        return dn;
+    }
+
+    public Attributes getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return the line where the record starts
+     */
+    public long getLine() {
+        return line;
+    }
+
+    @Override
+    public String toString() {
+        return dn.toString();
+    }
+}
@@ -0,0 +1,575 @@
+package fr.mtlx.odm.processor;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import fr.mtlx.odm.Attribute;
+import fr.mtlx.odm.Entry;
+import fr.mtlx.odm.Id;
+
+/**
+ * Reads the mapping of the classes annotated with {@link Entry} at compile
+ * time and generates, next to each concrete class <code>Foo</code>:
+ * <ul>
+ * <li><code>Foo_OdmMetadata</code>, a {@link fr.mtlx.odm.GeneratedMetadata}
+ * table loaded by the session factory instead of scanning the class, with
+ * accessors calling the getters and setters;</li>
+ * <li><code>Foo_OdmMapper</code>, an {@link fr.mtlx.odm.spring.EntryMapper}
+ * assigning the properties through their setters.</li>
+ * </ul>
+ *
+ * The rules are those of the reflective mapping: every field but the static,
+ * transient and identifier ones is mapped, the first field of an attribute
+ * name wins. Properties out of reach of the generated classes (private
+ * fields without public accessors) are accessed reflectively at runtime.
+ *
+ * Registered as a service, it runs whenever the library is on the compiler
+ * class path.
+ */
+@SupportedAnnotationTypes("fr.mtlx.odm.Entry")
+public class MetadataProcessor extends AbstractProcessor {
+
+    private static final String METADATA_SUFFIX = "_OdmMetadata";
+
+    private static final String MAPPER_SUFFIX = "_OdmMapper";
+
+    private static final Map<TypeKind, String> BOXES = new LinkedHashMap<>();
+
+    static {
+        BOXES.put(TypeKind.BOOLEAN, "java.lang.Boolean");
+        BOXES.put(TypeKind.BYTE, "java.lang.Byte");
+        BOXES.put(TypeKind.CHAR, "java.lang.Character");
+        BOXES.put(TypeKind.SHORT, "java.lang.Short");
+        BOXES.put(TypeKind.INT, "java.lang.Integer");
+        BOXES.put(TypeKind.LONG, "java.lang.Long");
+        BOXES.put(TypeKind.FLOAT, "java.lang.Float");
+        BOXES.put(TypeKind.DOUBLE, "java.lang.Double");
+    }
+
+    /**
+     * A mapped field as seen from the processed class
+     */
+    private static final class Property {
+
+        VariableElement field;
+
+        TypeMirror type;
+
+        String attributeName;
+
+        String[] aliases;
+
+        String syntax;
+
+        String objectType;
+
+        String collectionType;
+
+        String directoryType;
+
+        // expressions of the accessor, null when out of reach
+        String getter;
+
+        String setter;
+
+        boolean readOnly;
+
+        String name() {
+            return field.getSimpleName().toString();
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Entry.class)) {
+            if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)) {
+                // abstract classes are only read as the super classes of others
+                continue;
+            }
+
+            final TypeElement type = (TypeElement) element;
+
+            if (!isReachable(type)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "private classes are mapped reflectively", type);
+
+                continue;
+            }
+
+            try {
+                generate(type);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "cannot generate the metadata: " + e.getMessage(), type);
+            }
+        }
+
+        return false;
+    }
+
+    private void generate(final TypeElement type) throws IOException {
+        final List<String> objectClasses = new ArrayList<>();
+        final Set<String> auxiliaryClasses = new LinkedHashSet<>();
+        boolean strict = false;
+        boolean eager = false;
+
+        VariableElement identifier = null;
+        final List<VariableElement> fields = new ArrayList<>();
+        final List<ExecutableElement> prePersist = new ArrayList<>();
+
+        // the class first, then its super classes
+        for (TypeElement c = type; c != null; c = superclass(c)) {
+            final Entry entry = c.getAnnotation(Entry.class);
+
+            if (entry != null) {
+                final List<String> declared = new ArrayList<>(Arrays.asList(entry.objectClasses()));
+
+                Collections.reverse(declared);
+
+                objectClasses.addAll(declared);
+
+                auxiliaryClasses.addAll(Arrays.asList(entry.auxiliaryObjectClasses()));
+
+                strict |= entry.ignoreNonMatched();
+
+                eager |= entry.eager();
+            }
+
+            for (VariableElement field : ElementFilter.fieldsIn(c.getEnclosedElements())) {
+                if (field.getAnnotation(Id.class) != null) {
+                    identifier = field;
+                }
+
+                if (!field.getModifiers().contains(Modifier.STATIC)
+                        && !field.getModifiers().contains(Modifier.TRANSIENT)) {
+                    fields.add(field);
+                }
+            }
+
+            for (ExecutableElement method : ElementFilter.methodsIn(c.getEnclosedElements())) {
+                if (isAnnotated(method, "javax.persistence.PrePersist") && method.getParameters().isEmpty()) {
+                    prePersist.add(method);
+                }
+            }
+        }
+
+        Collections.reverse(objectClasses);
+
+        final Map<String, Property> properties = new LinkedHashMap<>();
+        final Set<String> attributeNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+        for (VariableElement field : fields) {
+            if (field.equals(identifier)) {
+                continue;
+            }
+
+            final Property property = property(type, field);
+
+            if (properties.containsKey(property.name()) || !attributeNames.add(property.attributeName)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "attribute " + property.attributeName + " already declared", field);
+
+                continue;
+            }
+
+            properties.put(property.name(), property);
+        }
+
+        final Property id = identifier != null ? property(type, identifier) : null;
+
+        writeMetadata(type, objectClasses, auxiliaryClasses, strict, eager, isAnnotated(type, "javax.persistence.Cacheable"),
+                id, new ArrayList<>(properties.values()), prePersist);
+
+        writeMapper(type, new ArrayList<>(properties.values()));
+    }
+
+    private Property property(final TypeElement type, final VariableElement field) {
+        final Property property = new Property();
+
+        property.field = field;
+
+        property.type = processingEnv.getTypeUtils().asMemberOf((DeclaredType) type.asType(), field);
+
+        final Attribute attribute = field.getAnnotation(Attribute.class);
+
+        property.attributeName = attribute != null && !attribute.name().trim().isEmpty() ? attribute.name().trim()
+                : property.name();
+
+        property.aliases = attribute != null ? attribute.aliases() : new String[] {};
+
+        property.syntax = attribute != null && !attribute.syntax().isEmpty() ? attribute.syntax() : null;
+
+        property.directoryType = attribute != null && attribute.type() == Attribute.Type.BINARY ? "byte[]"
+                : "java.lang.String";
+
+        if (isCollection(property.type)) {
+            property.collectionType = erasure(property.type);
+
+            final List<? extends TypeMirror> arguments = ((DeclaredType) property.type).getTypeArguments();
+
+            property.objectType = arguments.size() == 1 ? erasure(argument(arguments.get(0))) : property.collectionType;
+        } else {
+            property.objectType = erasure(property.type);
+        }
+
+        accessor(type, property);
+
+        return property;
+    }
+
+    /**
+     * Fills the accessor expressions, calling the bean accessors when they
+     * are public, the field otherwise when it is visible from the package of
+     * the class
+     */
+    private void accessor(final TypeElement type, final Property property) {
+        final String bean = "((" + erasure(type.asType()) + ") bean)";
+
+        ExecutableElement getter = null;
+        ExecutableElement setter = null;
+
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if (!isCallable(method, type)) {
+                continue;
+            }
+
+            final String name = method.getSimpleName().toString();
+
+            if (method.getParameters().isEmpty() && method.getReturnType().getKind() != TypeKind.VOID) {
+                if (name.startsWith("get") && property.name().equals(Introspector.decapitalize(name.substring(3)))
+                        || name.startsWith("is") && method.getReturnType().getKind() == TypeKind.BOOLEAN
+                        && property.name().equals(Introspector.decapitalize(name.substring(2)))) {
+                    getter = method;
+                }
+            } else if (method.getParameters().size() == 1 && method.getReturnType().getKind() == TypeKind.VOID
+                    && name.startsWith("set") && property.name().equals(Introspector.decapitalize(name.substring(3)))) {
+                setter = method;
+            }
+        }
+
+        final boolean fieldVisible = isVisible(property.field, type);
+
+        if (getter != null) {
+            property.getter = bean + "." + getter.getSimpleName() + "()";
+        } else if (fieldVisible) {
+            property.getter = bean + "." + property.name();
+        }
+
+        final TypeMirror valueType = setter != null ? setter.getParameters().get(0).asType() : property.type;
+
+        final String value = "(" + cast(valueType) + ") value";
+
+        if (setter != null) {
+            property.setter = bean + "." + setter.getSimpleName() + "(" + value + ")";
+        } else if (property.field.getModifiers().contains(Modifier.FINAL)) {
+            property.readOnly = true;
+        } else if (fieldVisible) {
+            property.setter = bean + "." + property.name() + " = " + value;
+        }
+    }
+
+    private void writeMetadata(final TypeElement type, final List<String> objectClasses,
+            final Set<String> auxiliaryClasses, final boolean strict, final boolean eager, final boolean cacheable,
+            final Property identifier, final List<Property> properties, final List<ExecutableElement> prePersist)
+            throws IOException {
+        final String name = generatedName(type, METADATA_SUFFIX);
+
+        final String className = erasure(type.asType());
+
+        try (PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualified(type, name), type)
+                .openWriter())) {
+            header(out, type);
+
+            out.printf("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })%n");
+            out.printf("public final class %s implements fr.mtlx.odm.GeneratedMetadata<%s> {%n%n", name, className);
+
+            out.printf("    private static final java.util.List<String> OBJECT_CLASSES = java.util.Arrays.asList(%s);%n%n",
+                    strings(objectClasses));
+            out.printf("    private static final java.util.Set<String> AUXILIARY_CLASSES = new java.util.LinkedHashSet<>(java.util.Arrays.asList(%s));%n%n",
+                    strings(auxiliaryClasses));
+            out.printf("    private static final fr.mtlx.odm.PropertyAccessor IDENTIFIER = %s;%n%n",
+                    identifier != null ? accessor(identifier) : "null");
+            out.printf("    private static final java.util.List<fr.mtlx.odm.GeneratedMetadata.Property> PROPERTIES = java.util.Arrays.asList(");
+
+            String separator = "";
+
+            for (Property property : properties) {
+                out.printf("%s%n            new fr.mtlx.odm.GeneratedMetadata.Property(%s, %s, new String[] { %s }, %s, %s.class, %s, %s.class,%n                    %s)",
+                        separator, literal(property.name()), literal(property.attributeName),
+                        strings(Arrays.asList(property.aliases)), property.syntax != null ? literal(property.syntax)
+                                : "null", property.objectType, property.collectionType != null ? property.collectionType
+                                + ".class" : "null", property.directoryType, accessor(property));
+
+                separator = ",";
+            }
+
+            out.printf(");%n%n");
+
+            out.printf("    @Override%n    public Class<%s> getPersistentClass() {%n        return %s.class;%n    }%n%n",
+                    className, className);
+            out.printf("    @Override%n    public java.util.List<String> getObjectClassHierarchy() {%n        return OBJECT_CLASSES;%n    }%n%n");
+            out.printf("    @Override%n    public java.util.Set<String> getAuxiliaryClasses() {%n        return AUXILIARY_CLASSES;%n    }%n%n");
+            out.printf("    @Override%n    public boolean isStrict() {%n        return %s;%n    }%n%n", strict);
+            out.printf("    @Override%n    public boolean isEager() {%n        return %s;%n    }%n%n", eager);
+            out.printf("    @Override%n    public boolean isCacheable() {%n        return %s;%n    }%n%n", cacheable);
+            out.printf("    @Override%n    public String getIdentifierPropertyName() {%n        return %s;%n    }%n%n",
+                    identifier != null ? literal(identifier.name()) : "null");
+            out.printf("    @Override%n    public fr.mtlx.odm.PropertyAccessor getIdentifierAccessor() {%n        return IDENTIFIER;%n    }%n%n");
+            out.printf("    @Override%n    public java.util.List<fr.mtlx.odm.GeneratedMetadata.Property> getProperties() {%n        return PROPERTIES;%n    }%n%n");
+            out.printf("    @Override%n    public java.util.List<java.lang.reflect.Method> getPrePersistMethods() {%n");
+            out.printf("        final java.util.List<java.lang.reflect.Method> methods = new java.util.ArrayList<>();%n");
+
+            for (ExecutableElement method : prePersist) {
+                out.printf("        methods.add(fr.mtlx.odm.GeneratedMetadata.method(%s.class, %s));%n",
+                        erasure(method.getEnclosingElement().asType()), literal(method.getSimpleName().toString()));
+            }
+
+            out.printf("        return methods;%n    }%n}%n");
+        }
+    }
+
+    private void writeMapper(final TypeElement type, final List<Property> properties) throws IOException {
+        final String name = generatedName(type, MAPPER_SUFFIX);
+
+        final String className = erasure(type.asType());
+
+        try (PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualified(type, name), type)
+                .openWriter())) {
+            header(out, type);
+
+            final List<String> names = new ArrayList<>();
+
+            for (Property property : properties) {
+                names.add(property.name());
+            }
+
+            out.printf("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })%n");
+            out.printf("public final class %s extends fr.mtlx.odm.spring.EntryMapper<%s> {%n%n", name, className);
+            out.printf("    /**%n     * the properties, by slot%n     */%n");
+            out.printf("    public static final String[] PROPERTIES = { %s };%n%n", strings(names));
+            out.printf("    public %s(final fr.mtlx.odm.ClassMetadata<%s> metadata) {%n        super(metadata);%n    }%n%n",
+                    name, className);
+            out.printf("    @Override%n    protected void assign(final Object bean, final int slot, final Object value) {%n");
+            out.printf("        switch (slot) {%n");
+
+            for (int slot = 0; slot < properties.size(); slot++) {
+                final Property property = properties.get(slot);
+
+                if (property.setter == null) {
+                    continue;
+                }
+
+                if (property.type.getKind().isPrimitive()) {
+                    // a missing attribute leaves the default value
+                    out.printf("        case %d:%n            if (value != null) {%n                %s;%n            }%n            return;%n",
+                            slot, property.setter);
+                } else {
+                    out.printf("        case %d:%n            %s;%n            return;%n", slot, property.setter);
+                }
+            }
+
+            out.printf("        default:%n            super.assign(bean, slot, value);%n        }%n    }%n}%n");
+        }
+    }
+
+    private void header(final PrintWriter out, final TypeElement type) {
+        final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+
+        if (!pkg.isUnnamed()) {
+            out.printf("package %s;%n%n", pkg.getQualifiedName());
+        }
+
+        out.printf("// generated by %s from %s%n", getClass().getName(), type.getQualifiedName());
+    }
+
+    private String accessor(final Property property) {
+        if (property.getter == null || property.setter == null && !property.readOnly) {
+            return "null";
+        }
+
+        return String.format("fr.mtlx.odm.PropertyAccessor.of(%s, bean -> %s, %s)", literal(property.name()),
+                property.getter, property.setter != null ? "(bean, value) -> " + property.setter : "null");
+    }
+
+    private boolean isCollection(final TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+
+        // as the reflective mapping: Collection and its direct sub interfaces
+        final TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+
+        if (element.getQualifiedName().contentEquals("java.util.Collection")) {
+            return true;
+        }
+
+        for (TypeMirror iface : element.getInterfaces()) {
+            if (erasure(iface).equals("java.util.Collection")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private TypeMirror argument(final TypeMirror argument) {
+        if (argument.getKind() == TypeKind.WILDCARD) {
+            final TypeMirror bound = ((WildcardType) argument).getExtendsBound();
+
+            return bound != null ? bound : processingEnv.getElementUtils().getTypeElement("java.lang.Object").asType();
+        }
+
+        return argument;
+    }
+
+    private String erasure(final TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private String cast(final TypeMirror type) {
+        return type.getKind().isPrimitive() ? BOXES.get(type.getKind()) : erasure(type);
+    }
+
+    private TypeElement superclass(final TypeElement type) {
+        final TypeMirror superclass = type.getSuperclass();
+
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement()
+                : null;
+    }
+
+    private static boolean isAnnotated(final Element element, final String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isReachable(final TypeElement type) {
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)
+                    || e != type && !e.getModifiers().contains(Modifier.STATIC) && e.getKind() == ElementKind.CLASS
+                    && type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // public members, or non private members of the same package
+    private boolean isCallable(final ExecutableElement method, final TypeElement type) {
+        return !method.getModifiers().contains(Modifier.STATIC) && isVisible(method, type);
+    }
+
+    private boolean isVisible(final Element member, final TypeElement type) {
+        final Set<Modifier> modifiers = member.getModifiers();
+
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+
+        final TypeElement declaring = (TypeElement) member.getEnclosingElement();
+
+        if (modifiers.contains(Modifier.PUBLIC) && declaring.getModifiers().contains(Modifier.PUBLIC)) {
+            return true;
+        }
+
+        return processingEnv.getElementUtils().getPackageOf(declaring)
+                .equals(processingEnv.getElementUtils().getPackageOf(type));
+    }
+
+    private String generatedName(final TypeElement type, final String suffix) {
+        final String qualified = type.getQualifiedName().toString();
+
+        final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+
+        final String simple = pkg.isUnnamed() ? qualified : qualified.substring(pkg.getQualifiedName().length() + 1);
+
+        // the binary name of a nested class, Outer$Inner, is looked up
+        return simple.replace('.', '$') + suffix;
+    }
+
+    private String qualified(final TypeElement type, final String name) {
+        final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+
+        return pkg.isUnnamed() ? name : pkg.getQualifiedName() + "." + name;
+    }
+
+    private static String strings(final Iterable<String> values) {
+        final StringBuilder builder = new StringBuilder();
+
+        for (String value : values) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+
+            builder.append(literal(value));
+        }
+
+        return builder.toString();
+    }
+
+    private static String literal(final String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+}
@@ -0,0 +1,124 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fr.mtlx.odm.BatchResult;
+
+/**
+ * Runs a task for every element of a stream with at most
+ * <code>concurrency</code> tasks in flight.
+ *
+ * The stream is consumed on the calling thread, which blocks as long as
+ * every worker is busy: a large (or lazily produced) stream never queues
+ * more than <code>concurrency</code> elements in memory.
+ *
+ * Interrupting the calling thread cancels the batch: no more task is
+ * submitted, the result covers the tasks already submitted once they are
+ * done, and the thread keeps its interrupt status.
+ */
+class BatchExecutor {
+
+    private static final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("odm-batch-%d")
+            .setDaemon(true).build();
+
+    private final int concurrency;
+
+    BatchExecutor(final int concurrency) {
+        checkArgument(concurrency > 0, "concurrency must be positive");
+
+        this.concurrency = concurrency;
+    }
+
+    <E> BatchResult<E> execute(final Stream<E> elements, final Consumer<? super E> task) {
+        return execute(elements, task, new BatchResult.Builder<>());
+    }
+
+    /**
+     * @param result collects the outcome of every task
+     */
+    <E> BatchResult<E> execute(final Stream<E> elements, final Consumer<? super E> task,
+            final BatchResult.Builder<E> result) {
+        checkNotNull(elements, "elements is null");
+        checkNotNull(task, "task is null");
+        checkNotNull(result, "result is null");
+
+        final Semaphore inFlight = new Semaphore(concurrency);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency, threadFactory);
+
+        try {
+            for (Iterator<E> it = elements.iterator(); it.hasNext();) {
+                final E element = it.next();
+
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    // cancelled, the remaining elements are not submitted
+                    Thread.currentThread().interrupt();
+
+                    break;
+                }
+
+                try {
+                    executor.execute(() -> {
+                        try {
+                            task.accept(element);
+
+                            result.success(element);
+                        } catch (RuntimeException e) {
+                            result.failure(element, e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+
+                    throw e;
+                }
+            }
+
+            // wait for the last tasks, at most concurrency of them
+            inFlight.acquireUninterruptibly(concurrency);
+        } finally {
+            executor.shutdown();
+        }
+
+        return result.build();
+    }
+}
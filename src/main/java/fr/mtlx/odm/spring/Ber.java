@@ -0,0 +1,186 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import java.io.ByteArrayOutputStream;
+
+import javax.naming.NamingException;
+
+/**
+ * Just enough of the basic encoding rules for the controls which the JDK
+ * does not provide.
+ */
+final class Ber {
+
+    static final int SEQUENCE = 0x30;
+
+    static final int INTEGER = 0x02;
+
+    static final int OCTET_STRING = 0x04;
+
+    static final int ENUMERATED = 0x0a;
+
+    private Ber() {
+    }
+
+    static byte[] integer(final int value) {
+        return element(INTEGER, toBytes(value));
+    }
+
+    static byte[] element(final int tag, final byte[]... contents) {
+        int length = 0;
+
+        for (byte[] content : contents) {
+            length += content.length;
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(length + 6);
+
+        out.write(tag);
+
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            final byte[] bytes = unsigned(length);
+
+            out.write(0x80 | bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        for (byte[] content : contents) {
+            out.write(content, 0, content.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * shortest two's complement representation
+     */
+    private static byte[] toBytes(final int value) {
+        int n = 4;
+
+        while (n > 1) {
+            final int top = value >> ((n - 1) * 8 - 1);
+
+            // the 9 upper bits are all 0 or all 1
+            if (top != 0 && top != -1) {
+                break;
+            }
+
+            n--;
+        }
+
+        final byte[] bytes = new byte[n];
+
+        for (int i = 0; i < n; i++) {
+            bytes[i] = (byte) (value >> ((n - 1 - i) * 8));
+        }
+
+        return bytes;
+    }
+
+    private static byte[] unsigned(final int value) {
+        final int n = value > 0xffffff ? 4 : value > 0xffff ? 3 : value > 0xff ? 2 : 1;
+
+        final byte[] bytes = new byte[n];
+
+        for (int i = 0; i < n; i++) {
+            bytes[i] = (byte) (value >> ((n - 1 - i) * 8));
+        }
+
+        return bytes;
+    }
+
+    static class Decoder {
+
+        private final byte[] data;
+
+        private int position;
+
+        Decoder(final byte[] data) {
+            this.data = data;
+        }
+
+        boolean hasMore() {
+            return position < data.length;
+        }
+
+        /**
+         * @return the length of the element, positioned on its content
+         */
+        int enter(final int tag) throws NamingException {
+            if (!hasMore() || (data[position] & 0xff) != tag) {
+                throw new NamingException(String.format("malformed control value: tag %#x expected at %d", tag, position));
+            }
+
+            position++;
+
+            return length();
+        }
+
+        int readInteger(final int tag) throws NamingException {
+            final int length = enter(tag);
+
+            if (length < 1 || length > 4 || position + length > data.length) {
+                throw new NamingException("malformed control value: integer out of range");
+            }
+
+            // sign extension of the first byte
+            int value = data[position++];
+
+            for (int i = 1; i < length; i++) {
+                value = (value << 8) | (data[position++] & 0xff);
+            }
+
+            return value;
+        }
+
+        private int length() throws NamingException {
+            if (!hasMore()) {
+                throw new NamingException("malformed control value: truncated");
+            }
+
+            final int first = data[position++] & 0xff;
+
+            if (first < 0x80) {
+                return first;
+            }
+
+            final int n = first & 0x7f;
+
+            if (n > 4 || position + n > data.length) {
+                throw new NamingException("malformed control value: length out of range");
+            }
+
+            int length = 0;
+
+            for (int i = 0; i < n; i++) {
+                length = (length << 8) | (data[position++] & 0xff);
+            }
+
+            return length;
+        }
+    }
+}
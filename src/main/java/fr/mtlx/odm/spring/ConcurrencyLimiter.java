@@ -0,0 +1,216 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.ldap.ServiceUnavailableException;
+
+/**
+ * Bounds the number of operations in flight against a directory, the bound
+ * following the observed latency.
+ *
+ * The latency of every operation is compared to its long term average: as
+ * long as they match the limit grows by about its square root, as soon as
+ * the directory slows down (queuing requests) the limit shrinks in the
+ * ratio of the two. Operations over the limit wait for a permit, up to
+ * <code>maxWait</code>, and are rejected with a
+ * {@link ServiceUnavailableException} after that or when
+ * <code>maxQueue</code> operations are already waiting.
+ */
+public class ConcurrencyLimiter {
+
+    // weight of a sample in the long term average
+    private static final double LONG_RTT_WEIGHT = 0.01;
+
+    // weight of a new limit in the current one
+    private static final double SMOOTHING = 0.2;
+
+    // latency increase considered as noise
+    private static final double TOLERANCE = 1.5;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long maxWait;
+
+    private final int maxQueue;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+
+    private double longRtt;
+
+    private int inFlight;
+
+    private int waiting;
+
+    public ConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit, final Duration maxWait,
+            final int maxQueue) {
+        checkArgument(minLimit > 0, "minLimit must be strictly positive");
+        checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit,
+                "initialLimit must be between minLimit and maxLimit");
+        checkArgument(!checkNotNull(maxWait).isNegative(), "maxWait must be positive");
+        checkArgument(maxQueue >= 0, "maxQueue must be positive");
+
+        this.limit = initialLimit;
+
+        this.minLimit = minLimit;
+
+        this.maxLimit = maxLimit;
+
+        this.maxWait = maxWait.toNanos();
+
+        this.maxQueue = maxQueue;
+    }
+
+    /**
+     * Waits for a permit
+     *
+     * @return the start of the operation, to be given back to
+     * {@link #release(long)}
+     * @throws ServiceUnavailableException if no permit was available in time
+     */
+    long acquire() {
+        lock.lock();
+
+        try {
+            if (inFlight >= (int) limit) {
+                if (waiting >= maxQueue) {
+                    throw rejected();
+                }
+
+                waiting++;
+
+                try {
+                    long remaining = maxWait;
+
+                    while (inFlight >= (int) limit) {
+                        if (remaining <= 0) {
+                            throw rejected();
+                        }
+
+                        remaining = available.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    throw rejected();
+                } finally {
+                    waiting--;
+                }
+            }
+
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+
+        return System.nanoTime();
+    }
+
+    /**
+     * Gives the permit back at the end of an operation
+     *
+     * @param start as returned by {@link #acquire()}
+     */
+    void release(final long start) {
+        final long rtt = System.nanoTime() - start;
+
+        lock.lock();
+
+        try {
+            update(rtt, inFlight);
+
+            inFlight--;
+
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param rtt latency of an operation, in nanoseconds
+     * @param concurrency operations in flight, the measured one included
+     */
+    void update(final long rtt, final int concurrency) {
+        lock.lock();
+
+        try {
+            if (longRtt == 0) {
+                longRtt = rtt;
+            } else {
+                longRtt += (rtt - longRtt) * LONG_RTT_WEIGHT;
+            }
+
+            // an idle limiter has learnt nothing about a higher limit
+            if (rtt <= longRtt * TOLERANCE && concurrency < limit / 2) {
+                return;
+            }
+
+            final double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / Math.max(rtt, 1)));
+
+            final double target = limit * gradient + Math.sqrt(limit);
+
+            limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ServiceUnavailableException rejected() {
+        return new ServiceUnavailableException(new javax.naming.ServiceUnavailableException(String.format(
+                "%d operations in flight, %d waiting", inFlight, waiting)));
+    }
+
+    public int getLimit() {
+        lock.lock();
+
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.naming.directory.DirContext;
+
+import org.springframework.ldap.NamingException;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.ldap.core.LdapOperations;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.util.ClassUtils;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Sends writes to the primary directory and spreads reads over its
+ * replicas.
+ *
+ * LdapTemplate asks for a read-only context for lookups and searches, and
+ * for a read-write one for binds, modifications and unbinds: the former are
+ * routed to a replica, the latter to the primary. Without replicas every
+ * context comes from the primary.
+ */
+public class ContextSourceRouter implements ContextSource {
+
+    public enum Strategy {
+
+        ROUND_ROBIN,
+        /**
+         * the replica with the fewest open contexts
+         */
+        LEAST_OUTSTANDING
+    }
+
+    static class Endpoint {
+
+        private final ContextSource contextSource;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private final LdapTemplate template;
+
+        // until the server refuses it
+        private volatile boolean virtualListViewSupported = true;
+
+        Endpoint(final ContextSource contextSource) {
+            this.contextSource = checkNotNull(contextSource);
+
+            this.template = new LdapTemplate(readOnly());
+        }
+
+        ContextSource getContextSource() {
+            return contextSource;
+        }
+
+        int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * @return a template reading from this endpoint only
+         */
+        LdapTemplate getTemplate() {
+            return template;
+        }
+
+        boolean isVirtualListViewSupported() {
+            return virtualListViewSupported;
+        }
+
+        void setVirtualListViewSupported(final boolean virtualListViewSupported) {
+            this.virtualListViewSupported = virtualListViewSupported;
+        }
+
+        /**
+         * @return a context which counts as outstanding until it is closed
+         */
+        DirContext getReadOnlyContext() {
+            final DirContext context = contextSource.getReadOnlyContext();
+
+            outstanding.incrementAndGet();
+
+            return onClose(context, outstanding::decrementAndGet);
+        }
+
+        /**
+         * @return a context source reading from this endpoint only
+         */
+        ContextSource readOnly() {
+            return new ContextSource() {
+
+                @Override
+                public DirContext getReadOnlyContext() throws NamingException {
+                    return Endpoint.this.getReadOnlyContext();
+                }
+
+                @Override
+                public DirContext getReadWriteContext() throws NamingException {
+                    return contextSource.getReadWriteContext();
+                }
+
+                @Override
+                public DirContext getContext(final String principal, final String credentials)
+                        throws NamingException {
+                    return contextSource.getContext(principal, credentials);
+                }
+            };
+        }
+    }
+
+    /**
+     * @return a proxy of the context running the callback when it is closed
+     * for the first time
+     */
+    static DirContext onClose(final DirContext context, final Runnable callback) {
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        final InvocationHandler handler = (Object proxy, Method method, Object[] args) -> {
+            if ("close".equals(method.getName()) && method.getParameterTypes().length == 0
+                    && closed.compareAndSet(false, true)) {
+                callback.run();
+            }
+
+            try {
+                return method.invoke(context, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+
+        // keeps LdapContext (request controls) when the target implements it
+        return (DirContext) Proxy.newProxyInstance(context.getClass().getClassLoader(),
+                ClassUtils.getAllInterfaces(context), handler);
+    }
+
+    private final Endpoint primary;
+
+    private final ImmutableList<Endpoint> replicas;
+
+    private final Strategy strategy;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ContextSourceRouter(final ContextSource primary, final List<ContextSource> replicas, final Strategy strategy) {
+        this.primary = new Endpoint(primary);
+
+        final ImmutableList.Builder<Endpoint> builder = ImmutableList.builder();
+
+        for (ContextSource replica : replicas) {
+            builder.add(new Endpoint(replica));
+        }
+
+        this.replicas = builder.build();
+
+        this.strategy = checkNotNull(strategy);
+    }
+
+    public ContextSource getPrimary() {
+        return primary.getContextSource();
+    }
+
+    Endpoint selectReplica() {
+        final int start = Math.abs(next.getAndIncrement() % replicas.size());
+
+        if (strategy == Strategy.ROUND_ROBIN) {
+            return replicas.get(start);
+        }
+
+        // ties are broken in round robin order
+        Endpoint selected = replicas.get(start);
+
+        for (int i = 1; i < replicas.size(); i++) {
+            final Endpoint candidate = replicas.get((start + i) % replicas.size());
+
+            if (candidate.getOutstanding() < selected.getOutstanding()) {
+                selected = candidate;
+            }
+        }
+
+        return selected;
+    }
+
+    @Override
+    public DirContext getReadOnlyContext() throws NamingException {
+        if (replicas.isEmpty()) {
+            return primary.getContextSource().getReadOnlyContext();
+        }
+
+        return selectReplica().getReadOnlyContext();
+    }
+
+    @Override
+    public DirContext getReadWriteContext() throws NamingException {
+        return primary.getContextSource().getReadWriteContext();
+    }
+
+    @Override
+    public DirContext getContext(final String principal, final String credentials) throws NamingException {
+        return primary.getContextSource().getContext(principal, credentials);
+    }
+
+    /**
+     * Sends a read to a replica and, if it has not answered after the delay
+     * of the policy, to another one: the first answer wins.
+     *
+     * The slower read is not abandoned, it runs to completion and releases
+     * its context. A read failing before the delay is not sent again.
+     *
+     * Only the latency of the first read is recorded, whether it wins or
+     * not: the second one is the tail the policy is meant to cut.
+     *
+     * @param read the request, run against a template reading from a single
+     * replica
+     * @param executor runs the requests, the caller waits for the answer
+     */
+    <R> R hedge(final Function<LdapOperations, R> read, final HedgingPolicy policy, final Executor executor) {
+        if (replicas.size() < 2) {
+            return read.apply((replicas.isEmpty() ? primary : selectReplica()).getTemplate());
+        }
+
+        final Endpoint first = selectReplica();
+
+        final Endpoint second = replicas.get((replicas.indexOf(first) + 1) % replicas.size());
+
+        final CompletableFuture<R> answer = new CompletableFuture<>();
+
+        final AtomicInteger sent = new AtomicInteger();
+
+        final AtomicInteger failed = new AtomicInteger();
+
+        final Function<Endpoint, Runnable> request = endpoint -> {
+            sent.incrementAndGet();
+
+            return () -> {
+                final long start = System.nanoTime();
+
+                try {
+                    final R result = read.apply(endpoint.getTemplate());
+
+                    if (endpoint == first) {
+                        policy.record(System.nanoTime() - start);
+                    }
+
+                    answer.complete(result);
+                } catch (RuntimeException e) {
+                    if (failed.incrementAndGet() == sent.get()) {
+                        answer.completeExceptionally(e);
+                    }
+                }
+            };
+        };
+
+        executor.execute(request.apply(first));
+
+        try {
+            try {
+                return answer.get(policy.getDelay(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                executor.execute(request.apply(second));
+
+                return answer.get();
+            }
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Context source of a session, see {@link ContextSourceRouter#sticky()}
+     */
+    class StickyContextSource implements ContextSource {
+
+        private volatile boolean written = false;
+
+        /**
+         * @return whether reads are still spread over the replicas
+         */
+        boolean isReadingReplicas() {
+            return !written && !replicas.isEmpty();
+        }
+
+        ContextSourceRouter getRouter() {
+            return ContextSourceRouter.this;
+        }
+
+        /**
+         * @return the endpoint the next read goes to
+         */
+        Endpoint readEndpoint() {
+            return isReadingReplicas() ? selectReplica() : primary;
+        }
+
+        @Override
+        public DirContext getReadOnlyContext() throws NamingException {
+            return written ? primary.getContextSource().getReadOnlyContext() : ContextSourceRouter.this
+                    .getReadOnlyContext();
+        }
+
+        @Override
+        public DirContext getReadWriteContext() throws NamingException {
+            written = true;
+
+            return ContextSourceRouter.this.getReadWriteContext();
+        }
+
+        @Override
+        public DirContext getContext(final String principal, final String credentials) throws NamingException {
+            return ContextSourceRouter.this.getContext(principal, credentials);
+        }
+    }
+
+    /**
+     * @return a view which reads from the primary once a write went through
+     * it, so that a session reads its own writes whatever the replication
+     * delay
+     */
+    StickyContextSource sticky() {
+        return new StickyContextSource();
+    }
+}
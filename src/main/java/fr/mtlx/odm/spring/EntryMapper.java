@@ -0,0 +1,345 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.ldap.LdapName;
+
+import org.apache.commons.beanutils.ConversionException;
+import org.springframework.ldap.core.DirContextOperations;
+import org.springframework.ldap.support.LdapUtils;
+
+import com.google.common.collect.Lists;
+
+import fr.mtlx.odm.AttributeMetadata;
+import fr.mtlx.odm.ClassMetadata;
+import fr.mtlx.odm.PropertyAccessor;
+import fr.mtlx.odm.Session;
+import fr.mtlx.odm.collections.LazyReferenceList;
+import fr.mtlx.odm.collections.LazyReferenceSet;
+import fr.mtlx.odm.converters.Converter;
+import fr.mtlx.odm.converters.ConvertionException;
+import fr.mtlx.odm.converters.EntryResolverConverter;
+
+/**
+ * Reads the mapped attributes of an entry, converts them and assigns them
+ * to an instance of its persistent class.
+ *
+ * Attributes are addressed by slot (see {@link AttributeMetadata#getSlot()})
+ * and their names are resolved once. This implementation assigns the
+ * properties through their {@link PropertyAccessor}, the subclasses
+ * generated by {@link EntryMapperGenerator} call the setters directly.
+ *
+ * @param <T> the persistent class
+ */
+public class EntryMapper<T> {
+
+    private final ClassMetadata<T> metadata;
+
+    private final AttributeMetadata[] attributes;
+
+    // attribute name then aliases, by slot
+    private final String[][] names;
+
+    private final PropertyAccessor[] accessors;
+
+    protected EntryMapper(final ClassMetadata<T> metadata) {
+        this.metadata = checkNotNull(metadata);
+
+        final int size = metadata.getProperties().size();
+
+        attributes = new AttributeMetadata[size];
+
+        names = new String[size][];
+
+        accessors = new PropertyAccessor[size];
+
+        for (String property : metadata.getProperties()) {
+            final AttributeMetadata attribute = metadata.getAttributeMetadata(property);
+
+            final int slot = attribute.getSlot();
+
+            attributes[slot] = attribute;
+
+            names[slot] = names(attribute);
+
+            accessors[slot] = metadata.getAccessor(attribute.getPropertyName());
+        }
+    }
+
+    private static String[] names(final AttributeMetadata attribute) {
+        final String[] aliases = attribute.getAttributeAliases();
+
+        final String[] names = new String[1 + aliases.length];
+
+        names[0] = attribute.getAttirbuteName();
+
+        System.arraycopy(aliases, 0, names, 1, aliases.length);
+
+        return names;
+    }
+
+    public ClassMetadata<T> getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @return the number of mapped attributes, slots range from 0 to size - 1
+     */
+    public int size() {
+        return attributes.length;
+    }
+
+    public AttributeMetadata getAttribute(final int slot) {
+        return attributes[slot];
+    }
+
+    /**
+     * Assigns a single attribute
+     */
+    public void load(final Object entry, final int slot, final Attributes attributes, final Session session)
+            throws NamingException {
+        assign(entry, slot, read(slot, attributes, null, session));
+    }
+
+    /**
+     * Assigns a single attribute, reading the remaining ranges of a ranged
+     * attribute from the entry of the context
+     */
+    public void load(final Object entry, final int slot, final DirContextOperations context, final Session session)
+            throws NamingException {
+        assign(entry, slot, read(slot, context.getAttributes(), context.getDn(), session));
+    }
+
+    /**
+     * Assigns every mapped attribute
+     */
+    public void loadAll(final Object entry, final Attributes attributes, final Session session)
+            throws NamingException {
+        for (int slot = 0; slot < this.attributes.length; slot++) {
+            load(entry, slot, attributes, session);
+        }
+    }
+
+    /**
+     * Assigns every mapped attribute, see
+     * {@link #load(Object, int, DirContextOperations, Session)}
+     */
+    public void loadAll(final Object entry, final DirContextOperations context, final Session session)
+            throws NamingException {
+        for (int slot = 0; slot < this.attributes.length; slot++) {
+            load(entry, slot, context, session);
+        }
+    }
+
+    /**
+     * @param value converted value, null if the attribute is missing
+     */
+    protected void assign(final Object entry, final int slot, @Nullable final Object value) {
+        accessors[slot].set(entry, value);
+    }
+
+    /**
+     * @return the converted value of an attribute, or null if the entry
+     * does not hold it
+     */
+    public @Nullable Object read(final int slot, final Attributes attributes, final Session session)
+            throws NamingException {
+        return read(slot, attributes, null, session);
+    }
+
+    /**
+     * @param dn the DN of the entry, used to read the remaining ranges of a
+     * ranged attribute (<code>member;range=0-1499</code>); without it only
+     * the values of the first range are read
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public @Nullable Object read(final int slot, final Attributes attributes, @Nullable final Name dn,
+            final Session session) throws NamingException {
+        final AttributeMetadata attributeMetadata = this.attributes[slot];
+
+        final Attribute attr = getAttribute(slot, attributes, dn, session);
+
+        if (attr == null) {
+            return null;
+        }
+
+        final Converter converter = attributeMetadata.getSyntaxConverter();
+
+        if (attributeMetadata.isMultivalued()) {
+            final Collection internalValues = attributeMetadata.newCollectionInstance();
+
+            final NamingEnumeration<?> values = attr.getAll();
+
+            if (isReference(attributeMetadata, session)) {
+                final List<LdapName> dns = Lists.newArrayList();
+
+                while (values.hasMoreElements()) {
+                    dns.add(dn(converter.fromDirectory(values.nextElement())));
+                }
+
+                final Collection references = references(attributeMetadata, dns, session);
+
+                if (references != null) {
+                    return references;
+                }
+
+                internalValues.addAll(resolve(attributeMetadata, dns, session));
+
+                return internalValues;
+            }
+
+            while (values.hasMoreElements()) {
+                final Object internalValue = converter.fromDirectory(values.nextElement());
+
+                internalValues.add(convert(internalValue, attributeMetadata, session));
+            }
+
+            return internalValues;
+        } else {
+            if (attr.size() > 1) {
+                throw new ConversionException(String.format("multiple values found for single valued attribute %s",
+                        attributeMetadata.getAttirbuteName()));
+            }
+
+            final Object internalValue = converter.fromDirectory(attr.get());
+
+            return convert(internalValue, attributeMetadata, session);
+        }
+    }
+
+    private @Nullable Attribute getAttribute(final int slot, final Attributes attributes, @Nullable final Name dn,
+            final Session session) throws NamingException {
+        for (final String name : names[slot]) {
+            final Attribute attr = attributes.get(name);
+
+            if (attr != null) {
+                return attr;
+            }
+        }
+
+        // only multivalued attributes are large enough to be ranged
+        if (this.attributes[slot].isMultivalued()) {
+            for (final String name : names[slot]) {
+                final Attribute attr = RangedAttribute.of(name, attributes, dn,
+                        ((SpringSessionImpl) session).getLdapOperations());
+
+                if (attr != null) {
+                    return attr;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isReference(final AttributeMetadata metadata, final Session session) {
+        return metadata.getAttributeConverter() == null
+                && session.getSessionFactory().isPersistentClass(metadata.getObjectType());
+    }
+
+    private static LdapName dn(final Object value) {
+        return value instanceof Name ? LdapUtils.newLdapName((Name) value) : LdapUtils.newLdapName(value.toString());
+    }
+
+    /**
+     * @return a collection resolving the referenced entries as they are
+     * read, or null if the property type does not accept one
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static @Nullable Collection<?> references(final AttributeMetadata metadata, final List<LdapName> dns,
+            final Session session) {
+        final Class<?> ctype = metadata.getCollectionType();
+
+        final int batchSize = ((SpringSessionImpl) session).getSessionFactory().getReferenceBatchSize();
+
+        if (ctype.isAssignableFrom(LazyReferenceList.class)) {
+            return new LazyReferenceList(metadata.getObjectType(), dns, session, batchSize);
+        } else if (ctype.isAssignableFrom(LazyReferenceSet.class)) {
+            return new LazyReferenceSet(metadata.getObjectType(), dns, session, batchSize);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the referenced entries, read together rather than one lookup
+     * each
+     */
+    private static List<Object> resolve(final AttributeMetadata metadata, final List<LdapName> dns,
+            final Session session) {
+        final Map<Name, ?> entries = session.getOperations(metadata.getObjectType()).lookupAll(dns);
+
+        final List<Object> resolved = Lists.newArrayListWithCapacity(dns.size());
+
+        for (LdapName dn : dns) {
+            final Object entry = entries.get(dn);
+
+            if (entry == null) {
+                throw new ConvertionException(String.format("%s not found", dn));
+            }
+
+            resolved.add(entry);
+        }
+
+        return resolved;
+    }
+
+    private @Nullable Object convert(final Object from, final AttributeMetadata metadata, final Session session) {
+        if (from == null) {
+            return null;
+        }
+
+        if (metadata.getObjectType().equals(from.getClass())) {
+            return from;
+        }
+
+        Converter converter = metadata.getAttributeConverter();
+
+        if (converter == null) {
+            if (session.getSessionFactory().isPersistentClass(metadata.getObjectType())) {
+                converter = new EntryResolverConverter<>(metadata.getObjectType(), session);
+            } else {
+                throw new ConvertionException(String.format("%s is not a persistent type.", metadata.getObjectType()));
+            }
+        }
+
+        final Object retval = converter.fromDirectory(from);
+
+        assert retval == null || metadata.getObjectType().isInstance(retval);
+
+        return retval;
+    }
+}
@@ -0,0 +1,234 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.CannotCompileException;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+import fr.mtlx.odm.AttributeMetadata;
+import fr.mtlx.odm.ClassMetadata;
+
+/**
+ * Generates, for a persistent class, an {@link EntryMapper} whose
+ * <code>assign</code> method switches on the slot and calls the setter of
+ * the property, with the appropriate cast, instead of going through a
+ * method handle.
+ *
+ * Properties without a setter reachable from the package of the persistent
+ * class are left to {@link EntryMapper}. When the class cannot be
+ * generated, the reflective mapper is used.
+ */
+final class EntryMapperGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(EntryMapperGenerator.class);
+
+    private static final ImmutableMap<Class<?>, String> UNBOXING = ImmutableMap.<Class<?>, String> builder()
+            .put(boolean.class, "((java.lang.Boolean) value).booleanValue()")
+            .put(byte.class, "((java.lang.Byte) value).byteValue()")
+            .put(char.class, "((java.lang.Character) value).charValue()")
+            .put(short.class, "((java.lang.Short) value).shortValue()")
+            .put(int.class, "((java.lang.Integer) value).intValue()")
+            .put(long.class, "((java.lang.Long) value).longValue()")
+            .put(float.class, "((java.lang.Float) value).floatValue()")
+            .put(double.class, "((java.lang.Double) value).doubleValue()").build();
+
+    /**
+     * suffix of the mappers generated at compile time
+     */
+    static final String MAPPER_SUFFIX = "_OdmMapper";
+
+    // two session factories may map the same class
+    private static final AtomicInteger sequence = new AtomicInteger();
+
+    private EntryMapperGenerator() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> EntryMapper<T> generate(final ClassMetadata<T> metadata) {
+        final Class<T> persistentClass = metadata.getPersistentClass();
+
+        if (!reachable(persistentClass) || persistentClass.getClassLoader() == null) {
+            return new EntryMapper<>(metadata);
+        }
+
+        final EntryMapper<T> compiled = compiled(metadata);
+
+        if (compiled != null) {
+            return compiled;
+        }
+
+        try {
+            final ClassPool pool = new ClassPool(true);
+
+            pool.appendClassPath(new ClassClassPath(EntryMapper.class));
+            pool.appendClassPath(new LoaderClassPath(persistentClass.getClassLoader()));
+
+            final CtClass mapper = pool.makeClass(String.format("%s$$OdmEntryMapper$%d", persistentClass.getName(),
+                    sequence.incrementAndGet()));
+
+            mapper.setSuperclass(pool.get(EntryMapper.class.getName()));
+
+            mapper.addConstructor(CtNewConstructor.make(String.format(
+                    "public %s(fr.mtlx.odm.ClassMetadata metadata) { super(metadata); }", mapper.getSimpleName()),
+                    mapper));
+
+            mapper.addMethod(CtNewMethod.make(assign(metadata), mapper));
+
+            final Class<?> generated = mapper.toClass(persistentClass.getClassLoader(),
+                    persistentClass.getProtectionDomain());
+
+            mapper.detach();
+
+            return (EntryMapper<T>) generated.getConstructor(ClassMetadata.class).newInstance(metadata);
+        } catch (CannotCompileException | NotFoundException | ReflectiveOperationException | IntrospectionException
+                | LinkageError e) {
+            log.warn("cannot generate the entry mapper of {}, falling back to reflection", persistentClass, e);
+
+            return new EntryMapper<>(metadata);
+        }
+    }
+
+    /**
+     * @return the mapper generated at compile time along with the metadata
+     * of the class (see {@link fr.mtlx.odm.processor.MetadataProcessor}), or
+     * null if there is none or if its slots do not match the metadata
+     */
+    @SuppressWarnings("unchecked")
+    private static @Nullable <T> EntryMapper<T> compiled(final ClassMetadata<T> metadata) {
+        final Class<T> persistentClass = metadata.getPersistentClass();
+
+        final Class<?> mapper;
+
+        try {
+            mapper = Class.forName(persistentClass.getName() + MAPPER_SUFFIX, true, persistentClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+
+        try {
+            final String[] properties = (String[]) mapper.getField("PROPERTIES").get(null);
+
+            for (int slot = 0; slot < properties.length; slot++) {
+                final AttributeMetadata attribute = metadata.getAttributeMetadata(properties[slot]);
+
+                if (attribute == null || attribute.getSlot() != slot) {
+                    log.warn("the compiled entry mapper of {} does not match its metadata", persistentClass);
+
+                    return null;
+                }
+            }
+
+            return (EntryMapper<T>) mapper.getConstructor(ClassMetadata.class).newInstance(metadata);
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+            log.warn("cannot load the compiled entry mapper of {}", persistentClass, e);
+
+            return null;
+        }
+    }
+
+    private static String assign(final ClassMetadata<?> metadata) throws IntrospectionException {
+        final Class<?> persistentClass = metadata.getPersistentClass();
+
+        final StringBuilder source = new StringBuilder(
+                "protected void assign(java.lang.Object entry, int slot, java.lang.Object value) {\n");
+
+        source.append(String.format("%1$s e = (%1$s) entry;\nswitch (slot) {\n", persistentClass.getName()));
+
+        final BitSet assigned = new BitSet();
+
+        for (PropertyDescriptor descriptor : Introspector.getBeanInfo(persistentClass).getPropertyDescriptors()) {
+            final Method setter = descriptor.getWriteMethod();
+
+            final AttributeMetadata attribute = metadata.getAttributeMetadata(descriptor.getName());
+
+            if (attribute == null || setter == null || !reachable(setter, persistentClass)
+                    || assigned.get(attribute.getSlot())) {
+                continue;
+            }
+
+            assigned.set(attribute.getSlot());
+
+            final Class<?> type = setter.getParameterTypes()[0];
+
+            if (type.isPrimitive()) {
+                // a missing attribute leaves the default value
+                source.append(String.format("case %d: if (value != null) e.%s(%s); return;\n", attribute.getSlot(),
+                        setter.getName(), UNBOXING.get(type)));
+            } else {
+                source.append(String.format("case %d: e.%s((%s) value); return;\n", attribute.getSlot(),
+                        setter.getName(), typeName(type)));
+            }
+        }
+
+        return source.append("default: super.assign(entry, slot, value);\n}\n}").toString();
+    }
+
+    // from its own package
+    private static boolean reachable(final Class<?> persistentClass) {
+        for (Class<?> c = persistentClass; c != null; c = c.getEnclosingClass()) {
+            if (Modifier.isPrivate(c.getModifiers())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean reachable(final Method setter, final Class<?> persistentClass) {
+        final Class<?> declaring = setter.getDeclaringClass();
+
+        if (Modifier.isPrivate(setter.getModifiers()) || !Modifier.isPublic(setter.getParameterTypes()[0].getModifiers())) {
+            return false;
+        }
+
+        // protected and package private setters of a super class in an other package
+        return Modifier.isPublic(setter.getModifiers()) && Modifier.isPublic(declaring.getModifiers())
+                || declaring.getPackage() == persistentClass.getPackage();
+    }
+
+    private static String typeName(final Class<?> type) {
+        return type.isArray() ? typeName(type.getComponentType()) + "[]" : type.getName();
+    }
+}
@@ -0,0 +1,158 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+import org.springframework.ldap.support.LdapUtils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import fr.mtlx.odm.AttributeMetadata;
+
+/**
+ * Entries of a search whose returning attributes were narrowed.
+ *
+ * The first access to an attribute which was not requested, on any entry
+ * of the group, reads the other attributes of every entry of the group
+ * with a single batched read, and merges them into the attributes the
+ * entries were mapped from.
+ */
+class FetchGroup {
+
+    private final Set<String> requested = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    private final int capacity;
+
+    private final Function<List<Name>, Map<Name, Attributes>> reader;
+
+    private final Map<Name, Attributes> pending = Maps.newLinkedHashMap();
+
+    private int size;
+
+    /**
+     * @param requested the returning attributes of the search
+     * @param capacity number of entries of the group
+     * @param reader reads every attribute of the entries, missing ones are
+     * left out
+     */
+    FetchGroup(final String[] requested, final int capacity, final Function<List<Name>, Map<Name, Attributes>> reader) {
+        checkArgument(capacity > 0, "capacity must be positive");
+
+        this.requested.addAll(Arrays.asList(requested));
+
+        this.capacity = capacity;
+
+        this.reader = checkNotNull(reader);
+    }
+
+    /**
+     * @return whether the returning attributes leave out some user
+     * attributes
+     */
+    static boolean isNarrowed(final String[] returningAttributes) {
+        return returningAttributes != null && !Arrays.asList(returningAttributes).contains("*");
+    }
+
+    boolean isFull() {
+        return size >= capacity;
+    }
+
+    void add(final Name dn, final Attributes attributes) {
+        pending.put(LdapUtils.newLdapName(dn), checkNotNull(attributes));
+
+        size++;
+    }
+
+    /**
+     * @return whether the attribute was read by the search
+     */
+    boolean isRequested(final AttributeMetadata attribute) {
+        if (requested.contains(attribute.getAttirbuteName())) {
+            return true;
+        }
+
+        for (String alias : attribute.getAttributeAliases()) {
+            if (requested.contains(alias)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads the attributes of the entries of the group which were not read
+     * yet; does nothing the second time.
+     */
+    void complete() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        final List<Name> dns = ImmutableList.copyOf(pending.keySet());
+
+        final Map<Name, Attributes> read = reader.apply(dns);
+
+        for (Name dn : dns) {
+            final Attributes attributes = read.get(dn);
+
+            if (attributes != null) {
+                merge(pending.get(dn), attributes);
+            }
+        }
+
+        pending.clear();
+    }
+
+    private static void merge(final Attributes target, final Attributes source) {
+        try {
+            for (NamingEnumeration<? extends Attribute> all = source.getAll(); all.hasMore();) {
+                final Attribute attribute = all.next();
+
+                // the values read by the search are kept
+                if (target.get(attribute.getID()) == null) {
+                    target.put(attribute);
+                }
+            }
+        } catch (NamingException e) {
+            throw LdapUtils.convertLdapException(e);
+        }
+    }
+}
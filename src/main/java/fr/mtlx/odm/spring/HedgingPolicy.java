@@ -0,0 +1,117 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * When to send a read a second time, to another replica.
+ *
+ * The delay is the chosen percentile of the latencies recently observed,
+ * bounded by <code>minDelay</code> and <code>maxDelay</code>: with the 95th
+ * percentile about one read in twenty is sent twice, and the slowest reads
+ * are answered by whichever replica is faster.
+ */
+public class HedgingPolicy {
+
+    private static final int SAMPLES = 1024;
+
+    // the percentile is not sorted out again for every read
+    private static final int REFRESH = 64;
+
+    private final double percentile;
+
+    private final long minDelay;
+
+    private final long maxDelay;
+
+    private final long[] latencies = new long[SAMPLES];
+
+    private final AtomicLong recorded = new AtomicLong();
+
+    private volatile long delay;
+
+    /**
+     * @param percentile between 0 and 1, exclusive
+     */
+    public HedgingPolicy(final double percentile, final Duration minDelay, final Duration maxDelay) {
+        checkArgument(percentile > 0 && percentile < 1, "percentile must be between 0 and 1");
+        checkArgument(!checkNotNull(minDelay).isNegative(), "minDelay must be positive");
+        checkArgument(maxDelay.compareTo(minDelay) >= 0, "maxDelay must not be less than minDelay");
+
+        this.percentile = percentile;
+
+        this.minDelay = minDelay.toNanos();
+
+        this.maxDelay = maxDelay.toNanos();
+
+        // nothing observed yet
+        this.delay = this.maxDelay;
+    }
+
+    public HedgingPolicy() {
+        this(0.95, Duration.ofMillis(5), Duration.ofSeconds(1));
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * @return how long to wait for the first replica before asking another
+     * one, in nanoseconds
+     */
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * @param latency of an answered read, in nanoseconds
+     */
+    void record(final long latency) {
+        final long n = recorded.getAndIncrement();
+
+        // a racing writer may overwrite a sample, which does not matter here
+        latencies[(int) (n % SAMPLES)] = latency;
+
+        if (n % REFRESH == REFRESH - 1) {
+            delay = compute(Math.min(n + 1, SAMPLES));
+        }
+    }
+
+    private long compute(final long count) {
+        final long[] sorted = Arrays.copyOf(latencies, (int) count);
+
+        Arrays.sort(sorted);
+
+        final long observed = sorted[(int) Math.min(count - 1, (long) Math.ceil(percentile * count) - 1)];
+
+        return Math.max(minDelay, Math.min(maxDelay, observed));
+    }
+}
@@ -0,0 +1,268 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ldap.core.DirContextAdapter;
+import org.springframework.ldap.core.LdapTemplate;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import fr.mtlx.odm.AttributeMetadata;
+import fr.mtlx.odm.BatchResult;
+import fr.mtlx.odm.ClassMetadata;
+import fr.mtlx.odm.ldif.LdifReader;
+import fr.mtlx.odm.ldif.LdifRecord;
+
+/**
+ * Loads an LDIF file into the directory.
+ *
+ * Each record is checked against the persistent class matching its object
+ * classes: records without one are rejected. Attributes the class does not
+ * map are written as they are, unless the class is strict (see
+ * {@link ClassMetadata#isStrict()}) and the record is rejected, or they are
+ * operational attributes. Records are bound several at a time (see
+ * {@link SpringSessionFactoryImpl#setBatchConcurrency(int)}) while the file
+ * is being read; an entry is only bound once its parent, when it comes from
+ * the same file, has been. A record repeating the DN of a record still being
+ * bound waits for it.
+ *
+ * The imported records are counted, not kept: see
+ * {@link BatchResult#getSucceededCount()}.
+ */
+public class LdifImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(LdifImporter.class);
+
+    private final SpringSessionFactoryImpl sessionFactory;
+
+    private final LdapTemplate operations;
+
+    private int progressInterval = 10000;
+
+    public LdifImporter(final SpringSessionFactoryImpl sessionFactory) {
+        this.sessionFactory = checkNotNull(sessionFactory);
+
+        this.operations = new LdapTemplate(sessionFactory.getContextSource());
+    }
+
+    public BatchResult<LdifRecord> importLdif(final Path path) throws IOException {
+        try (LdifReader reader = new LdifReader(path); Stream<LdifRecord> records = reader.records()) {
+            return importRecords(records);
+        }
+    }
+
+    public BatchResult<LdifRecord> importRecords(final Stream<LdifRecord> records) {
+        final BatchExecutor executor = new BatchExecutor(sessionFactory.getBatchConcurrency());
+
+        // entries being bound, their children wait for them
+        final Map<Name, CountDownLatch> inFlight = Maps.newConcurrentMap();
+
+        // the latch of each record in flight, unless another one of the same
+        // DN already was
+        final Map<LdifRecord, CountDownLatch> owned = Collections.synchronizedMap(new IdentityHashMap<>());
+
+        final AtomicLong processed = new AtomicLong();
+
+        final long start = System.nanoTime();
+
+        final Stream<LdifRecord> tracked = records.peek(record -> {
+            final CountDownLatch latch = new CountDownLatch(1);
+
+            if (inFlight.putIfAbsent(record.getDn(), latch) == null) {
+                owned.put(record, latch);
+            }
+        });
+
+        // the records are only counted, the file may not fit in memory
+        final BatchResult<LdifRecord> result = executor.execute(tracked, record -> {
+            final Name dn = record.getDn();
+
+            final CountDownLatch latch = owned.remove(record);
+
+            try {
+                if (latch == null) {
+                    // a duplicate is bound (and rejected) after the first one
+                    await(inFlight.get(dn));
+                }
+
+                if (dn.size() > 1) {
+                    await(inFlight.get(dn.getPrefix(dn.size() - 1)));
+                }
+
+                operations.bind(toContext(record));
+            } finally {
+                if (latch != null) {
+                    inFlight.remove(dn, latch);
+
+                    latch.countDown();
+                }
+
+                final long n = processed.incrementAndGet();
+
+                if (n % progressInterval == 0 && log.isInfoEnabled()) {
+                    log.info("{} entries processed ({} entries/s)", n, rate(n, System.nanoTime() - start));
+                }
+            }
+        }, BatchResult.Builder.counting());
+
+        if (log.isInfoEnabled()) {
+            log.info("{} entries imported, {} failures in {} ms ({} entries/s)", result.getSucceededCount(),
+                    result.getFailures().size(), result.getElapsed().toMillis(), (long) result.getThroughput());
+        }
+
+        return result;
+    }
+
+    private static void await(@Nullable final CountDownLatch latch) {
+        if (latch != null) {
+            Uninterruptibles.awaitUninterruptibly(latch);
+        }
+    }
+
+    private static long rate(final long count, final long nanos) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+
+        return millis > 0 ? count * 1000 / millis : 0;
+    }
+
+    DirContextAdapter toContext(final LdifRecord record) {
+        final Name dn = record.getDn();
+
+        final Attribute objectClass = record.getAttributes().get("objectClass");
+
+        checkArgument(objectClass != null, "%s has no objectClass", dn);
+
+        final Set<String> objectClasses = Sets.newTreeSet(String.CASE_INSENSITIVE_ORDER);
+
+        final ClassMetadata<?> metadata;
+
+        try {
+            for (Object value : values(objectClass)) {
+                objectClasses.add(value.toString());
+            }
+
+            metadata = sessionFactory.getClassMetadata(objectClasses.toArray(new String[]{}));
+        } catch (NamingException | IllegalAccessException | InvocationTargetException | ClassNotFoundException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        checkArgument(metadata != null, "%s: no persistent class for %s", dn, objectClasses);
+
+        final DirContextAdapter context = new DirContextAdapter(dn);
+
+        objectClasses.addAll(metadata.getObjectClassHierarchy());
+        objectClasses.addAll(metadata.getAuxiliaryClasses());
+
+        context.setAttributeValues("objectClass", objectClasses.toArray());
+
+        try {
+            for (NamingEnumeration<? extends Attribute> it = record.getAttributes().getAll(); it.hasMore();) {
+                final Attribute attribute = it.next();
+
+                final String attributeId = attribute.getID();
+
+                if (attributeId.equalsIgnoreCase("objectClass")) {
+                    continue;
+                }
+
+                final AttributeMetadata ameta = metadata.getAttributeMetadataByAttributeName(attributeId);
+
+                if (ameta == null) {
+                    if (sessionFactory.isOperationalAttribute(attributeId)) {
+                        // maintained by the server
+                        continue;
+                    }
+
+                    checkArgument(!metadata.isStrict(), "%s: attribute %s not mapped by %s", dn, attributeId,
+                            metadata.getPersistentClass());
+
+                    // not converted, written as read
+                    context.setAttributeValues(attributeId, values(attribute).toArray());
+
+                    continue;
+                }
+
+                final Object[] values = values(attribute).toArray();
+
+                if (ameta.getDirectoryType() != byte[].class) {
+                    for (int i = 0; i < values.length; i++) {
+                        if (values[i] instanceof byte[]) {
+                            values[i] = new String((byte[]) values[i], UTF_8);
+                        }
+                    }
+                }
+
+                context.setAttributeValues(attributeId, values);
+            }
+        } catch (NamingException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        return context;
+    }
+
+    private static List<?> values(final Attribute attribute) throws NamingException {
+        return Collections.list(attribute.getAll());
+    }
+
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * Number of processed entries between two progress reports
+     */
+    public void setProgressInterval(int progressInterval) {
+        checkArgument(progressInterval > 0, "progressInterval must be positive");
+
+        this.progressInterval = progressInterval;
+    }
+}
@@ -0,0 +1,119 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import javax.naming.directory.DirContext;
+
+import org.springframework.ldap.NamingException;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.util.ClassUtils;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Admission control in front of a context source: every call sent to the
+ * directory, opening the context included, holds a permit of the
+ * {@link ConcurrencyLimiter} for its own duration.
+ *
+ * Permits are not held for the lifetime of a context: a search streamed to
+ * the caller holds none while its results are consumed, so that the lookups
+ * made meanwhile (references, proxies) are not queued behind it, and its
+ * latency does not include the time spent by the caller.
+ */
+public class LimitedContextSource implements ContextSource {
+
+    // context methods which do not reach the directory
+    private static final Set<String> LOCAL = ImmutableSet.of("close", "getEnvironment", "addToEnvironment",
+            "removeFromEnvironment", "getNameInNamespace", "getNameParser", "composeName", "setRequestControls",
+            "getRequestControls", "getResponseControls", "getConnectControls");
+
+    private final ContextSource target;
+
+    private final ConcurrencyLimiter limiter;
+
+    public LimitedContextSource(final ContextSource target, final ConcurrencyLimiter limiter) {
+        this.target = checkNotNull(target);
+
+        this.limiter = checkNotNull(limiter);
+    }
+
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    private DirContext admit(final Supplier<DirContext> context) {
+        final long start = limiter.acquire();
+
+        final DirContext admitted;
+
+        try {
+            admitted = context.get();
+        } finally {
+            limiter.release(start);
+        }
+
+        final InvocationHandler handler = (Object proxy, Method method, Object[] args) -> {
+            final boolean limited = method.getDeclaringClass() != Object.class && !LOCAL.contains(method.getName());
+
+            final long operation = limited ? limiter.acquire() : 0;
+
+            try {
+                return method.invoke(admitted, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (limited) {
+                    limiter.release(operation);
+                }
+            }
+        };
+
+        return (DirContext) Proxy.newProxyInstance(admitted.getClass().getClassLoader(),
+                ClassUtils.getAllInterfaces(admitted), handler);
+    }
+
+    @Override
+    public DirContext getReadOnlyContext() throws NamingException {
+        return admit(target::getReadOnlyContext);
+    }
+
+    @Override
+    public DirContext getReadWriteContext() throws NamingException {
+        return admit(target::getReadWriteContext);
+    }
+
+    @Override
+    public DirContext getContext(final String principal, final String credentials) throws NamingException {
+        return admit(() -> target.getContext(principal, credentials));
+    }
+}
@@ -0,0 +1,359 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+
+import org.springframework.ldap.core.AttributesMapper;
+import org.springframework.ldap.core.LdapOperations;
+import org.springframework.ldap.support.LdapUtils;
+
+/**
+ * Values of an attribute the directory returns by ranges
+ * (<code>member;range=0-1499</code>), for entries holding more values than
+ * the server sends at once.
+ *
+ * {@link #getAll()} reads the next ranges as the values are enumerated, one
+ * base-scope read per range; any other access reads the remaining ranges
+ * first.
+ *
+ * Once the last range is read, the attributes of the entry hold the values
+ * under the plain id instead of the ranged one, so that a later modification
+ * is computed against every value.
+ */
+class RangedAttribute extends BasicAttribute {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String RANGE = ";range=";
+
+    private final transient Name dn;
+
+    private final transient LdapOperations operations;
+
+    // the entry attributes, completed after the last range
+    private final transient Attributes attributes;
+
+    private final String rangeId;
+
+    // first index of the next range, -1 once the last one was read
+    private int next;
+
+    private RangedAttribute(final String id, final Attributes attributes, final String rangeId, final int next,
+            final Name dn, final LdapOperations operations) throws NamingException {
+        super(id);
+
+        this.dn = dn;
+
+        this.operations = operations;
+
+        this.attributes = attributes;
+
+        this.rangeId = rangeId;
+
+        this.next = next;
+
+        append(attributes.get(rangeId));
+    }
+
+    /**
+     * @return the values of the attribute held by the entry under a range
+     * option, or null if it holds none
+     */
+    static @Nullable Attribute of(final String id, final Attributes attributes, @Nullable final Name dn,
+            final LdapOperations operations) throws NamingException {
+        final String rangeId = findRange(id, attributes);
+
+        if (rangeId == null) {
+            return null;
+        }
+
+        final int next = next(rangeId);
+
+        if (next < 0 || dn == null) {
+            final BasicAttribute values = new BasicAttribute(id);
+
+            for (NamingEnumeration<?> all = attributes.get(rangeId).getAll(); all.hasMore();) {
+                values.add(all.next());
+            }
+
+            if (next < 0) {
+                // a single range, complete
+                replace(attributes, rangeId, values);
+            }
+
+            return values;
+        }
+
+        return new RangedAttribute(id, attributes, rangeId, next, dn, checkNotNull(operations));
+    }
+
+    /**
+     * Reads the remaining ranges of the attribute, if the entry holds it
+     * under a range option: the attributes then hold every value under the
+     * plain id.
+     */
+    static void complete(final String id, final Attributes attributes, final Name dn,
+            final LdapOperations operations) throws NamingException {
+        final Attribute attribute = of(id, attributes, checkNotNull(dn), operations);
+
+        if (attribute instanceof RangedAttribute) {
+            ((RangedAttribute) attribute).readAll();
+        }
+    }
+
+    /**
+     * @return the key of the ranged attribute in the attributes, as
+     * enumerated by them
+     */
+    private static @Nullable String findRange(final String id, final Attributes attributes) throws NamingException {
+        final String prefix = id.toLowerCase() + RANGE;
+
+        for (NamingEnumeration<String> ids = attributes.getIDs(); ids.hasMore();) {
+            final String candidate = ids.next();
+
+            if (candidate.toLowerCase().startsWith(prefix)) {
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+
+    private static void replace(final Attributes attributes, final String rangeId, final Attribute values) {
+        attributes.remove(rangeId);
+
+        attributes.put(values);
+    }
+
+    /**
+     * @return the first index of the range following the one of the
+     * attribute id (<code>member;range=0-1499</code>), -1 after the last one
+     * (<code>member;range=1500-*</code>)
+     */
+    static int next(final String rangeId) {
+        final String range = rangeId.substring(rangeId.toLowerCase().indexOf(RANGE) + RANGE.length());
+
+        final String high = range.substring(range.indexOf('-') + 1);
+
+        return "*".equals(high) ? -1 : Integer.parseInt(high) + 1;
+    }
+
+    private void append(final Attribute range) throws NamingException {
+        for (NamingEnumeration<?> all = range.getAll(); all.hasMore();) {
+            values.add(all.next());
+        }
+    }
+
+    /**
+     * @return false once every range was read
+     */
+    private boolean readNext() {
+        if (next < 0) {
+            return false;
+        }
+
+        final String requested = getID() + RANGE + next + "-*";
+
+        final Attributes range = operations.lookup(dn, new String[] { requested },
+                (AttributesMapper<Attributes>) attrs -> attrs);
+
+        try {
+            final String id = findRange(getID(), range);
+
+            if (id == null) {
+                complete();
+
+                return false;
+            }
+
+            append(range.get(id));
+
+            next = next(id);
+
+            if (next < 0) {
+                complete();
+            }
+        } catch (NamingException e) {
+            throw LdapUtils.convertLdapException(e);
+        }
+
+        return true;
+    }
+
+    private void complete() {
+        next = -1;
+
+        final BasicAttribute all = new BasicAttribute(getID());
+
+        for (Object value : values) {
+            all.add(value);
+        }
+
+        replace(attributes, rangeId, all);
+    }
+
+    private void readAll() {
+        while (readNext()) {
+            // next range
+        }
+    }
+
+    @Override
+    public NamingEnumeration<?> getAll() throws NamingException {
+        return new NamingEnumeration<Object>() {
+
+            private int index = 0;
+
+            @Override
+            public boolean hasMore() {
+                while (index >= values.size()) {
+                    if (!readNext()) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+
+            @Override
+            public Object next() {
+                if (!hasMore()) {
+                    throw new NoSuchElementException();
+                }
+
+                return values.get(index++);
+            }
+
+            @Override
+            public boolean hasMoreElements() {
+                return hasMore();
+            }
+
+            @Override
+            public Object nextElement() {
+                return next();
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    @Override
+    public Object get() throws NamingException {
+        readAll();
+
+        return super.get();
+    }
+
+    @Override
+    public Object get(final int index) throws NamingException {
+        readAll();
+
+        return super.get(index);
+    }
+
+    @Override
+    public int size() {
+        readAll();
+
+        return super.size();
+    }
+
+    @Override
+    public boolean contains(final Object attrVal) {
+        readAll();
+
+        return super.contains(attrVal);
+    }
+
+    @Override
+    public boolean add(final Object attrVal) {
+        readAll();
+
+        return super.add(attrVal);
+    }
+
+    @Override
+    public void add(final int index, final Object attrVal) {
+        readAll();
+
+        super.add(index, attrVal);
+    }
+
+    @Override
+    public Object set(final int index, final Object attrVal) {
+        readAll();
+
+        return super.set(index, attrVal);
+    }
+
+    @Override
+    public boolean remove(final Object attrVal) {
+        readAll();
+
+        return super.remove(attrVal);
+    }
+
+    @Override
+    public Object remove(final int index) {
+        readAll();
+
+        return super.remove(index);
+    }
+
+    @Override
+    public Object clone() {
+        readAll();
+
+        return super.clone();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        readAll();
+
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        readAll();
+
+        return super.hashCode();
+    }
+}
@@ -0,0 +1,176 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ldap.TimeLimitExceededException;
+import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.core.DirContextProcessor;
+import org.springframework.ldap.support.LdapUtils;
+
+/**
+ * Maps search results as they are read from the connection.
+ *
+ * Closing the iterator before the end of the results closes the naming
+ * enumeration, which abandons the search on the server, and releases the
+ * context. It may be closed from another thread, a deadline expiring is
+ * reported as a time limit exceeded to the reading thread.
+ */
+class SearchResultIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchResultIterator.class);
+
+    private final DirContext context;
+
+    private final NamingEnumeration<SearchResult> results;
+
+    private final ContextMapper<T> mapper;
+
+    private final DirContextProcessor processor;
+
+    private volatile Future<?> expiry;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile boolean expired;
+
+    SearchResultIterator(final DirContext context, final NamingEnumeration<SearchResult> results,
+            final ContextMapper<T> mapper, final DirContextProcessor processor) {
+        this.context = checkNotNull(context);
+
+        this.results = checkNotNull(results);
+
+        this.mapper = checkNotNull(mapper);
+
+        this.processor = checkNotNull(processor);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (expired) {
+            throw new TimeLimitExceededException(new javax.naming.TimeLimitExceededException("search deadline exceeded"));
+        }
+
+        if (closed.get()) {
+            return false;
+        }
+
+        try {
+            if (results.hasMore()) {
+                return true;
+            }
+
+            // response controls
+            processor.postProcess(context);
+        } catch (javax.naming.SizeLimitExceededException e) {
+            // as LdapTemplate does by default
+            log.debug("size limit exceeded, ignored", e);
+        } catch (NamingException e) {
+            if (expired) {
+                return hasNext();
+            }
+
+            close();
+
+            throw LdapUtils.convertLdapException(e);
+        }
+
+        close();
+
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        try {
+            return mapper.mapFromContext(results.next().getObject());
+        } catch (NamingException e) {
+            close();
+
+            throw LdapUtils.convertLdapException(e);
+        }
+    }
+
+    /**
+     * @param expiry the scheduled call to {@link #expire()}, cancelled when
+     * the iterator is closed
+     */
+    void setExpiry(final Future<?> expiry) {
+        this.expiry = expiry;
+
+        if (closed.get()) {
+            expiry.cancel(false);
+        }
+    }
+
+    void expire() {
+        if (!closed.get()) {
+            expired = true;
+
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        final Future<?> scheduled = expiry;
+
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+
+        try {
+            results.close();
+        } catch (NamingException e) {
+            log.debug("error while abandoning search", e);
+        } finally {
+            try {
+                context.close();
+            } catch (NamingException e) {
+                log.debug("error while closing context", e);
+            }
+        }
+    }
+}
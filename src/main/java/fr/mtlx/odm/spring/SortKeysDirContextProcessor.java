@@ -0,0 +1,83 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.SortControl;
+import javax.naming.ldap.SortKey;
+import javax.naming.ldap.SortResponseControl;
+
+import org.springframework.ldap.control.AbstractRequestControlDirContextProcessor;
+import org.springframework.ldap.control.CreateControlFailedException;
+
+/**
+ * Server side sort (RFC 2891) on several keys; the control is critical, the
+ * search fails when the server cannot sort.
+ */
+class SortKeysDirContextProcessor extends AbstractRequestControlDirContextProcessor {
+
+    private final SortKey[] sortKeys;
+
+    SortKeysDirContextProcessor(final List<SortKey> sortKeys) {
+        checkArgument(!sortKeys.isEmpty(), "no sort key");
+
+        this.sortKeys = sortKeys.toArray(new SortKey[sortKeys.size()]);
+    }
+
+    @Override
+    public Control createRequestControl() {
+        try {
+            return new SortControl(sortKeys, Control.CRITICAL);
+        } catch (IOException e) {
+            throw new CreateControlFailedException("cannot encode sort control", e);
+        }
+    }
+
+    @Override
+    public void postProcess(final DirContext ctx) throws NamingException {
+        final Control[] controls = ((LdapContext) ctx).getResponseControls();
+
+        if (controls == null) {
+            return;
+        }
+
+        for (Control control : controls) {
+            if (control instanceof SortResponseControl) {
+                final SortResponseControl response = (SortResponseControl) control;
+
+                if (!response.isSorted()) {
+                    throw response.getException();
+                }
+            }
+        }
+    }
+}
@@ -24,42 +24,82 @@ package fr.mtlx.odm.spring;
  * #L%
  */
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
-
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.Nullable;
 import javax.naming.InvalidNameException;
 import javax.naming.Name;
+import javax.naming.NameClassPair;
+import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
 import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.ldap.OperationNotSupportedException;
 import org.springframework.ldap.SizeLimitExceededException;
 import org.springframework.ldap.control.PagedResultsCookie;
 import org.springframework.ldap.control.PagedResultsDirContextProcessor;
+import org.springframework.ldap.core.AttributesMapper;
 import org.springframework.ldap.core.DirContextAdapter;
 import org.springframework.ldap.core.DirContextOperations;
 import org.springframework.ldap.core.DirContextProcessor;
 import org.springframework.ldap.core.LdapOperations;
-import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.NameClassPairCallbackHandler;
 import org.springframework.ldap.core.support.AbstractContextMapper;
-
+import org.springframework.ldap.core.support.AggregateDirContextProcessor;
+import org.springframework.ldap.filter.EqualsFilter;
+import org.springframework.ldap.filter.OrFilter;
+import org.springframework.ldap.support.LdapUtils;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import fr.mtlx.odm.AttributeMetadata;
+import fr.mtlx.odm.BatchResult;
 import fr.mtlx.odm.ClassAssistant;
 import fr.mtlx.odm.ClassMetadata;
 import fr.mtlx.odm.MappingException;
 import fr.mtlx.odm.OperationsImpl;
+import fr.mtlx.odm.SearchOptions;
+import fr.mtlx.odm.SessionImpl;
 import fr.mtlx.odm.cache.TypeSafeCache;
+import fr.mtlx.odm.collections.ReferenceCollection;
+import fr.mtlx.odm.export.EntryWriter;
 import fr.mtlx.odm.converters.Converter;
+import fr.mtlx.odm.converters.EntryResolverConverter;
 import fr.mtlx.odm.utils.TypeCheckConverter;
 
 import org.springframework.ldap.core.ContextMapper;
@@ -68,8 +108,6 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
 
     private static final Logger log = LoggerFactory.getLogger(SpringOperationsImpl.class);
 
-    private final MappingContextMapper contextMapper;
-
     private final ClassAssistant<T> assistant;
 
     private final LdapOperations operations;
@@ -83,9 +121,7 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
 
         this.assistant = new ClassAssistant<>(metadata);
 
-        this.contextMapper = new MappingContextMapper(assistant);
-
-        this.operations = new LdapTemplate(session.getSessionFactory().getContextSource());
+        this.operations = session.getLdapOperations();
 
         metadataChecker = new TypeCheckConverter<>(metadata.getClass());
     }
@@ -96,25 +132,149 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
     }
 
     @Override
-    public void bind(T transientObject) {
-        Name dn;
+    protected void doBind(T transientObject) {
+        final DirContextOperations context = bindContext(checkNotNull(transientObject));
+
+        getSession().getContextCache().store(context.getDn(), context);
+    }
+
+    @Override
+    public BatchResult<T> bindAll(final Stream<T> transientObjects) {
+        if (getSession().isWriteBehind()) {
+            // the entries may replace or depend on queued ones
+            getSession().flush();
+        }
+
+        final Map<Name, DirContextOperations> contexts = Maps.newConcurrentMap();
+
+        final BatchExecutor executor = new BatchExecutor(getSession().getSessionFactory().getBatchConcurrency());
+
+        final BatchResult<T> result = executor.execute(transientObjects, transientObject -> {
+            prePersist(checkNotNull(transientObject));
+
+            final DirContextOperations context = bindContext(transientObject);
+
+            contexts.put(context.getDn(), context);
+        });
+
+        final TypeSafeCache<DirContextOperations> contextCache = getSession().getContextCache();
+
+        contexts.forEach(contextCache::store);
+
+        if (log.isDebugEnabled()) {
+            log.debug("{} entries bound, {} failures", contexts.size(), result.getFailures().size());
+        }
 
-        prePersist(checkNotNull(transientObject));
+        return result;
+    }
 
-        dn = assistant.getIdentifier(transientObject);
+    private DirContextOperations bindContext(final T transientObject) {
+        final Name dn = assistant.getIdentifier(transientObject);
 
-        DirContextOperations context = new DirContextAdapter(dn);
+        final DirContextOperations context = new DirContextAdapter(dn);
 
-        mapToContext(transientObject, context);
+        mapToContext(transientObject, context, ameta -> true);
 
         operations.bind(context);
 
-        getSession().getContextCache().store(dn, context);
+        return context;
     }
 
+    /**
+     * Sends the differences between the object and the context it was read
+     * from (or last written with) as a single modify request; nothing is
+     * sent when the object is unchanged.
+     */
     @Override
-    public void modify(T persistentObject) {
-        throw new UnsupportedOperationException("not implemented yet");
+    protected void doModify(T persistentObject) {
+        final Name dn = assistant.getIdentifier(checkNotNull(persistentObject));
+
+        final Optional<SpringProxyFactory.DirContextHandler<?>> handler = SpringProxyFactory.getHandler(persistentObject);
+
+        // proxies know which properties were assigned, plain objects are compared in full
+        final Predicate<AttributeMetadata> changed = handler.isPresent()
+                ? handler.get()::isDirty
+                : ameta -> true;
+
+        if (metadata.getProperties().stream().map(metadata::getAttributeMetadata).noneMatch(changed)) {
+            if (log.isDebugEnabled()) {
+                log.debug("{} unchanged", dn);
+            }
+
+            return;
+        }
+
+        final TypeSafeCache<DirContextOperations> contextCache = getSession().getContextCache();
+
+        // eagerly mapped entries do not keep their context
+        final DirContextOperations persisted = contextCache.retrieve(dn).orElseGet(() -> lookupForUpdate(dn));
+
+        completeRanges(persisted, changed);
+
+        // work on a copy: a rejected modification must not leave the cached context half updated
+        final DirContextAdapter context = new DirContextAdapter(persisted.getAttributes(), dn);
+
+        context.setUpdateMode(true);
+
+        mapToContext(persistentObject, context, changed);
+
+        final ModificationItem[] modifications = context.getModificationItems();
+
+        if (modifications.length == 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("{} unchanged", dn);
+            }
+
+            handler.ifPresent(SpringProxyFactory.DirContextHandler::clearDirty);
+
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("modifying {} ({} modifications)", dn, modifications.length);
+        }
+
+        operations.modifyAttributes(dn, modifications);
+
+        context.update();
+
+        contextCache.store(dn, context);
+
+        handler.ifPresent(SpringProxyFactory.DirContextHandler::clearDirty);
+    }
+
+    /**
+     * Reads the remaining values of the ranged attributes about to be
+     * written: a context read again for the update, or holding a property
+     * assigned before it was ever read, still has the first range only.
+     */
+    private void completeRanges(final DirContextOperations context, final Predicate<AttributeMetadata> changed) {
+        final Attributes attributes = context.getAttributes();
+
+        try {
+            for (String propertyName : metadata.getProperties()) {
+                final AttributeMetadata ameta = metadata.getAttributeMetadata(propertyName);
+
+                if (!ameta.isMultivalued() || !changed.test(ameta)) {
+                    continue;
+                }
+
+                RangedAttribute.complete(ameta.getAttirbuteName(), attributes, context.getDn(), operations);
+
+                for (String alias : ameta.getAttributeAliases()) {
+                    RangedAttribute.complete(alias, attributes, context.getDn(), operations);
+                }
+            }
+        } catch (NamingException e) {
+            throw LdapUtils.convertLdapException(e);
+        }
+    }
+
+    /**
+     * @return the context of an entry as found on the primary directory
+     */
+    private DirContextOperations lookupForUpdate(final Name dn) {
+        return operations.executeReadWrite(ctx -> (DirContextOperations) ctx.lookup(dn));
     }
 
     @Override
@@ -126,39 +286,409 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
 
     @Override
     protected T doLookup(Name dn) {
-        final DirContextOperations context = getSession().getContextCache().retrieve(dn).orElse(doContextLookup(dn));
+        final DirContextOperations context = getSession().getContextCache().retrieve(dn)
+                .orElseGet(() -> doContextLookup(dn));
 
-        final MappingContextMapper mapper = new MappingContextMapper(assistant);
+        final ClassMetadata<? extends T> entryMetadata = entryMetadata(context);
 
         // XXX : il faut stocker le context dans le cache avant de faire le mapping !
-        getSession().getContextCache().store(dn, context);
+        if (!entryMetadata.isEager()) {
+            getSession().getContextCache().store(dn, context);
+        }
 
-        return mapper.doMapFromContext(context);
+        return mapEntry(context, entryMetadata, entryMetadata.isEager());
     }
 
+    /**
+     * Entries sharing a parent are read with one level searches on an OR of
+     * their RDNs, by chunks of the factory's referenceBatchSize; the other
+     * ones are looked up one at a time.
+     */
     @Override
-    public List<T> search(final Name base, final SearchControls controls, final String filter)
-            throws javax.naming.SizeLimitExceededException {
-        return search(base, controls, filter, Optional.empty());
+    protected Map<Name, T> doLookupAll(final List<Name> dns) {
+        final Map<Name, T> entries = Maps.newHashMap();
+
+        final SearchControls controls = siblingsControls();
+
+        bySiblings(dns, (parent, chunk) -> {
+            final Map<Name, T> found = Maps.newHashMap();
+
+            try {
+                for (T entry : search(parent, controls, rdnFilter(chunk), Optional.empty(), false)) {
+                    found.put(assistant.getIdentifier(entry), entry);
+                }
+            } catch (javax.naming.SizeLimitExceededException e) {
+                throw LdapUtils.convertLdapException(e);
+            }
+
+            for (Name dn : chunk) {
+                Optional.ofNullable(found.get(LdapUtils.newLdapName(dn))).ifPresent(entry -> entries.put(dn, entry));
+            }
+        }, dn -> {
+            try {
+                entries.put(dn, doLookup(dn));
+            } catch (org.springframework.ldap.NameNotFoundException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("{} not found", dn);
+                }
+            }
+        });
+
+        return entries;
+    }
+
+    /**
+     * @return every attribute of the entries, by DN, batched as
+     * {@link #doLookupAll(List)}; the entries are not mapped nor cached
+     */
+    private Map<Name, Attributes> readAttributes(final List<Name> dns) {
+        final Map<Name, Attributes> read = Maps.newHashMap();
+
+        final SearchControls controls = siblingsControls();
+
+        final ContextMapper<DirContextOperations> contextMapper = ctx -> (DirContextOperations) ctx;
+
+        bySiblings(dns, (parent, chunk) -> {
+            for (DirContextOperations context : getSession().hedgedRead(operations,
+                    template -> template.search(parent, rdnFilter(chunk), controls, contextMapper))) {
+                read.put(LdapUtils.newLdapName(context.getDn()), context.getAttributes());
+            }
+        }, dn -> {
+            try {
+                read.put(LdapUtils.newLdapName(dn), doContextLookup(dn).getAttributes());
+            } catch (org.springframework.ldap.NameNotFoundException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("{} not found", dn);
+                }
+            }
+        });
+
+        return read;
+    }
+
+    private static SearchControls siblingsControls() {
+        final SearchControls controls = SessionImpl.getDefaultSearchControls();
+
+        controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+
+        return controls;
+    }
+
+    /**
+     * Splits DNs into chunks of siblings, of at most referenceBatchSize
+     * entries; DNs left alone, or with a multivalued RDN, are passed one at
+     * a time.
+     */
+    private void bySiblings(final List<Name> dns, final BiConsumer<Name, List<Name>> siblings,
+            final Consumer<Name> single) {
+        final ListMultimap<Name, Name> byParent = LinkedListMultimap.create();
+
+        final List<Name> singles = Lists.newArrayList();
+
+        for (Name dn : dns) {
+            final LdapName name = LdapUtils.newLdapName(dn);
+
+            if (name.size() > 1 && name.getRdn(name.size() - 1).size() == 1) {
+                byParent.put(name.getPrefix(name.size() - 1), dn);
+            } else {
+                singles.add(dn);
+            }
+        }
+
+        for (Name parent : byParent.keySet()) {
+            for (List<Name> chunk : Lists.partition(byParent.get(parent),
+                    getSession().getSessionFactory().getReferenceBatchSize())) {
+                if (chunk.size() == 1) {
+                    singles.addAll(chunk);
+                } else {
+                    siblings.accept(parent, chunk);
+                }
+            }
+        }
+
+        singles.forEach(single);
+    }
+
+    /**
+     * @return an OR of the RDNs of sibling entries
+     */
+    private static String rdnFilter(final List<Name> siblings) {
+        final OrFilter filter = new OrFilter();
+
+        for (Name dn : siblings) {
+            final LdapName name = LdapUtils.newLdapName(dn);
+
+            final Rdn rdn = name.getRdn(name.size() - 1);
+
+            filter.or(new EqualsFilter(rdn.getType(), rdn.getValue().toString()));
+        }
+
+        return filter.encode();
+    }
+
+    /**
+     * Reads the DNs from the context of a proxied entry, without resolving
+     * its references.
+     */
+    @Override
+    protected Collection<? extends Name> referencedDns(final T entry, final AttributeMetadata attribute) {
+        final Optional<DirContextOperations> context = getSession().getContextCache().retrieve(
+                assistant.getIdentifier(entry));
+
+        if (!context.isPresent()) {
+            return super.referencedDns(entry, attribute);
+        }
+
+        SpringProxyFactory.getHandler(entry).ifPresent(handler -> handler.fetch(attribute));
+
+        final String attributeId = getAttributeId(context.get(), attribute);
+
+        final Attributes attributes = context.get().getAttributes();
+
+        final List<Name> dns = Lists.newArrayList();
+
+        try {
+            Attribute values = attributes.get(attributeId);
+
+            if (values == null) {
+                values = RangedAttribute.of(attributeId, attributes, context.get().getDn(), operations);
+            }
+
+            if (values != null) {
+                for (NamingEnumeration<?> all = values.getAll(); all.hasMore();) {
+                    final Object value = all.next();
+
+                    dns.add(value instanceof Name ? (Name) value : LdapUtils.newLdapName(value.toString()));
+                }
+            }
+        } catch (NamingException e) {
+            throw LdapUtils.convertLdapException(e);
+        }
+
+        return dns;
+    }
+
+    @Override
+    public List<T> search(final Name base, final SearchControls controls, final String filter,
+            final SearchOptions options) throws javax.naming.SizeLimitExceededException {
+        if (options.getDeadline().isPresent()) {
+            try (Stream<T> results = stream(base, controls, filter, options)) {
+                return results.collect(Collectors.toList());
+            }
+        }
+
+        // request controls are stateful, they cannot be shared by two requests
+        if (options.isHedged() && !options.isSorted() && !options.hasWindow()) {
+            return hedgedSearch(base, controls, filter, options.isEager());
+        }
+
+        return search(base, controls, filter, processor(options, Optional.empty()), options.isEager());
+    }
+
+    /**
+     * Only the contexts are fetched concurrently, the entries are mapped on
+     * the calling thread from the winning answer.
+     */
+    private List<T> hedgedSearch(final Name base, final SearchControls controls, final String filter,
+            final boolean eager) throws javax.naming.SizeLimitExceededException {
+        final List<DirContextOperations> contexts;
+
+        try {
+            contexts = getSession().hedgedRead(operations,
+                    template -> template.search(base, filter, controls,
+                            (ContextMapper<DirContextOperations>) ctx -> (DirContextOperations) ctx));
+        } catch (SizeLimitExceededException ex) {
+            throw new javax.naming.SizeLimitExceededException(ex.getExplanation());
+        }
+
+        final ContextMapper<T> mapper = searchMapper(eager, controls.getReturningAttributes());
+
+        final List<T> results = Lists.newArrayListWithCapacity(contexts.size());
+
+        for (DirContextOperations context : contexts) {
+            try {
+                results.add(mapper.mapFromContext(context));
+            } catch (NamingException e) {
+                throw LdapUtils.convertLdapException(e);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * @return the processor adding the request controls of the options to
+     * the search, along with an other one (paging)
+     */
+    private Optional<DirContextProcessor> processor(final SearchOptions options,
+            final Optional<DirContextProcessor> other) {
+        final List<DirContextProcessor> processors = Lists.newArrayList();
+
+        if (options.isSorted()) {
+            processors.add(new SortKeysDirContextProcessor(options.getSortKeys()));
+        }
+
+        if (options.hasWindow()) {
+            checkState(options.isSorted(), "a window requires a sort order");
+
+            processors.add(new VirtualListViewDirContextProcessor(options.getOffset(), options.getSize()));
+        }
+
+        other.ifPresent(processors::add);
+
+        if (processors.size() < 2) {
+            return processors.stream().findFirst();
+        }
+
+        final AggregateDirContextProcessor aggregate = new AggregateDirContextProcessor();
+
+        aggregate.setDirContextProcessors(processors);
+
+        return Optional.of(aggregate);
     }
 
     public List<T> search(final Name base, final SearchControls controls, final String filter,
-            final Optional<DirContextProcessor> processor) throws javax.naming.SizeLimitExceededException {
+            final Optional<DirContextProcessor> processor, final boolean eager)
+            throws javax.naming.SizeLimitExceededException {
+        try {
+            return operations.search(base, filter, controls, searchMapper(eager, controls.getReturningAttributes()),
+                    processor.orElse(nullDirContextProcessor));
+        } catch (SizeLimitExceededException ex) {
+            throw new javax.naming.SizeLimitExceededException(ex.getExplanation());
+        }
+    }
+
+    @Override
+    public Stream<T> stream(final Name base, final SearchControls controls, final String filter,
+            final SearchOptions options) {
+        final SearchResultIterator<T> iterator = open(base, controls, filter, options);
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+                false).onClose(iterator::close);
+    }
+
+    @Override
+    public CompletableFuture<List<T>> listAsync(final Name base, final SearchControls controls, final String filter,
+            final SearchOptions options) {
+        final CompletableFuture<List<T>> future = new CompletableFuture<>();
+
+        final AtomicReference<SearchResultIterator<T>> running = new AtomicReference<>();
+
+        future.whenComplete((results, e) -> {
+            if (future.isCancelled()) {
+                Optional.ofNullable(running.get()).ifPresent(SearchResultIterator::close);
+            }
+        });
+
+        getSession().getSessionFactory().getSearchExecutor().execute(() -> {
+            if (future.isCancelled()) {
+                return;
+            }
+
+            try (SearchResultIterator<T> iterator = open(base, controls, filter, options)) {
+                running.set(iterator);
+
+                // cancelled before the search was registered
+                if (!future.isCancelled()) {
+                    future.complete(Lists.newArrayList(iterator));
+                }
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Sends the search request; the results are read by the returned
+     * iterator, which owns the context.
+     */
+    private SearchResultIterator<T> open(final Name base, final SearchControls controls, final String filter,
+            final SearchOptions options) {
+        final DirContextProcessor processor = processor(options, Optional.empty()).orElse(nullDirContextProcessor);
+
+        final SearchControls searchControls = SessionImpl.copySearchControls(controls);
+
+        searchControls.setReturningAttributes(controls.getReturningAttributes());
+
+        // DirContextAdapter instances from the object factory
+        searchControls.setReturningObjFlag(true);
+
+        final DirContext context = getSession().getContextSource().getReadOnlyContext();
 
+        final SearchResultIterator<T> iterator;
+
+        try {
+            processor.preProcess(context);
+
+            iterator = new SearchResultIterator<>(context, context.search(base, filter, searchControls),
+                    searchMapper(options.isEager(), controls.getReturningAttributes()),
+                    processor);
+        } catch (NamingException e) {
+            try {
+                context.close();
+            } catch (NamingException ex) {
+                log.debug("error while closing context", ex);
+            }
+
+            throw LdapUtils.convertLdapException(e);
+        }
+
+        options.getDeadline().ifPresent(deadline -> iterator.setExpiry(getSession().getSessionFactory().getScheduler()
+                .schedule(iterator::expire, deadline.toNanos(), TimeUnit.NANOSECONDS)));
+
+        return iterator;
+    }
+
+    /**
+     * @param eager map the entries to plain instances, whatever their class
+     * @param returningAttributes the attributes read by the search, null for
+     * all; proxies of a narrowed search read the others on first access, see
+     * {@link FetchGroup}
+     */
+    private ContextMapper<T> searchMapper(final boolean eager, @Nullable final String[] returningAttributes) {
         final SpringSessionImpl session = getSession();
 
         final TypeSafeCache<DirContextOperations> contextCache = session.getContextCache();
 
-        final ContextMapper<T> cm = new AbstractContextMapper<T>() {
+        final boolean narrowed = FetchGroup.isNarrowed(returningAttributes);
+
+        return new AbstractContextMapper<T>() {
+
+            private FetchGroup group;
+
+            private void join(final Name dn, final DirContextOperations ctx, final T entry) {
+                if (group == null || group.isFull()) {
+                    group = new FetchGroup(returningAttributes, session.getSessionFactory().getReferenceBatchSize(),
+                            SpringOperationsImpl.this::readAttributes);
+                }
+
+                group.add(dn, ctx.getAttributes());
+
+                SpringProxyFactory.getHandler(entry).ifPresent(handler -> handler.setFetchGroup(group));
+            }
+
             @Override
             protected T doMapFromContext(final DirContextOperations ctx) {
                 final Name dn = ctx.getDn();
 
-                contextCache.store(dn, ctx);
+                final ClassMetadata<? extends T> entryMetadata = entryMetadata(ctx);
+
+                final boolean plain = eager || entryMetadata.isEager();
+
+                // a plain entry does not keep its context
+                if (!plain) {
+                    contextCache.store(dn, ctx);
+                }
 
                 final Object object = session.getFromCacheStack(persistentClass, dn).orElseGet( () -> {
                     
-                   T entry = contextMapper.doMapFromContext(ctx);
+                   T entry = mapEntry(ctx, entryMetadata, plain);
+
+                   if (narrowed && !plain) {
+                       join(dn, ctx, entry);
+                   }
                 
                    entryCache.store(dn, entry);
                      
@@ -169,23 +699,138 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
                 return typeChecker.convert(object);
             }
         };
+    }
+
+    @Override
+    public long count(final Name base, final SearchControls controls, final String filter, final SearchOptions options)
+            throws javax.naming.SizeLimitExceededException {
+        // DNs only
+        final SearchControls countControls = SessionImpl.copySearchControls(controls);
+
+        countControls.setReturningAttributes(RETURN_NO_ATTRIBUTES);
 
         try {
-            return operations.search(base, filter, controls, cm, processor.orElse(nullDirContextProcessor));
+            switch (options.getCountStrategy()) {
+                case VLV:
+                    return countVirtualListView(operations, base, countControls, filter, options);
+                case SUBORDINATES:
+                    return countSubordinates(base, countControls);
+                case PAGED_SCAN:
+                    return countPagedScan(operations, base, countControls, filter);
+                default:
+                    // replicas may not support the same controls
+                    final ContextSourceRouter.Endpoint endpoint = getSession().readEndpoint();
+
+                    if (options.isSorted() && endpoint.isVirtualListViewSupported()) {
+                        try {
+                            return countVirtualListView(endpoint.getTemplate(), base, countControls, filter, options);
+                        } catch (OperationNotSupportedException e) {
+                            log.info("virtual list view not supported, counting with paged searches", e);
+
+                            endpoint.setVirtualListViewSupported(false);
+                        }
+                    }
+
+                    return countPagedScan(endpoint.getTemplate(), base, countControls, filter);
+            }
         } catch (SizeLimitExceededException ex) {
             throw new javax.naming.SizeLimitExceededException(ex.getExplanation());
         }
     }
 
+    /**
+     * a single entry is returned along with the content count
+     */
+    private long countVirtualListView(final LdapOperations template, final Name base, final SearchControls controls,
+            final String filter, final SearchOptions options) {
+        checkState(options.isSorted(), "a virtual list view requires a sort order");
+
+        final VirtualListViewDirContextProcessor vlv = new VirtualListViewDirContextProcessor(0, 0);
+
+        final AggregateDirContextProcessor processor = new AggregateDirContextProcessor();
+
+        processor.addDirContextProcessor(new SortKeysDirContextProcessor(options.getSortKeys()));
+        processor.addDirContextProcessor(vlv);
+
+        template.search(base, filter, controls, new CountCallbackHandler(), processor);
+
+        if (vlv.getContentCount() < 0) {
+            throw new OperationNotSupportedException(new javax.naming.OperationNotSupportedException(
+                    "no virtual list view response"));
+        }
+
+        return vlv.getContentCount();
+    }
+
+    /**
+     * the number of children of the base, whatever the filter
+     */
+    private long countSubordinates(final Name base, final SearchControls controls) {
+        checkState(controls.getSearchScope() == SearchControls.ONELEVEL_SCOPE,
+                "numSubordinates only counts one level");
+
+        final String count = operations.lookup(base, new String[]{"numSubordinates"},
+                (AttributesMapper<String>) attributes -> {
+                    final Attribute attribute = attributes.get("numSubordinates");
+
+                    return attribute != null ? (String) attribute.get() : null;
+                });
+
+        checkState(count != null, "%s has no numSubordinates attribute", base);
+
+        return Long.parseLong(count);
+    }
+
+    private long countPagedScan(final LdapOperations template, final Name base, final SearchControls controls,
+            final String filter) {
+        final CountCallbackHandler handler = new CountCallbackHandler();
+
+        pagedSearch(template, base, filter, controls, handler, getSession().getSessionFactory().getCountPageSize());
+
+        return handler.getCount();
+    }
+
+    private static void pagedSearch(final LdapOperations template, final Name base, final String filter,
+            final SearchControls controls, final NameClassPairCallbackHandler handler, final int pageSize) {
+        PagedResultsCookie cookie = null;
+
+        do {
+            final PagedResultsDirContextProcessor processor = new PagedResultsDirContextProcessor(pageSize, cookie);
+
+            template.search(base, filter, controls, handler, processor);
+
+            cookie = processor.getCookie();
+        } while (cookie != null && cookie.getCookie() != null);
+    }
+
+    /**
+     * Entries are written straight from the search results: no context,
+     * entity or list is built.
+     */
     @Override
-    public long count(final Name base, final SearchControls controls, final String filter) {
-        controls.setReturningAttributes(RETURN_NO_ATTRIBUTES);
+    public long export(final Name base, final SearchControls controls, final String filter, final int pageSize,
+            final EntryWriter writer) throws IOException, javax.naming.SizeLimitExceededException {
+        final ExportCallbackHandler handler = new ExportCallbackHandler(checkNotNull(writer));
 
-        CountContextMapper cm = new CountContextMapper();
+        try {
+            if (pageSize > 0) {
+                pagedSearch(operations, base, filter, controls, handler, pageSize);
+            } else {
+                operations.search(base, filter, controls, handler, nullDirContextProcessor);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (SizeLimitExceededException ex) {
+            throw new javax.naming.SizeLimitExceededException(ex.getExplanation());
+        }
 
-        operations.search(base, filter, controls, cm, nullDirContextProcessor);
+        writer.flush();
 
-        return cm.getCount();
+        if (log.isDebugEnabled()) {
+            log.debug("{} entries exported", handler.getCount());
+        }
+
+        return handler.getCount();
     }
 
     private void mergeObjectClasses(final DirContextOperations context) {
@@ -199,7 +844,8 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
         }
     }
 
-    private void mapToContext(final T transientObject, final DirContextOperations context) {
+    private void mapToContext(final T transientObject, final DirContextOperations context,
+            final Predicate<AttributeMetadata> filter) {
 
         mergeObjectClasses(context);
 
@@ -207,7 +853,12 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
             final AttributeMetadata ameta = metadata.getAttributeMetadata(propertyName);
 
             assert ameta != null;
-            
+
+            if (!filter.test(ameta)) {
+                // left untouched, and not loaded from the entry either
+                continue;
+            }
+
             final Converter converter;
             try {
                 converter = getSession().getSyntaxConverter(ameta.getSyntax());
@@ -216,50 +867,77 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
                 continue;
             }
 
-            final String attributeId = ameta.getAttirbuteName();
+            final String attributeId = getAttributeId(context, ameta);
 
+            // in update mode the context computes the ADD/REMOVE/REPLACE modifications
             if (ameta.isMultivalued()) {
-                final Collection<?> values = (Collection<?>) assistant.getValue(transientObject, propertyName);
+                Collection<?> values = (Collection<?>) assistant.getValue(transientObject, propertyName);
+
+                if (values instanceof ReferenceCollection) {
+                    // no need to resolve the entries to write their DNs
+                    values = ((ReferenceCollection<?>) values).getDns();
+                }
 
                 if (values != null) {
+                    final List<Object> directoryValues = Lists.newArrayListWithCapacity(values.size());
+
                     for (Object value : values) {
                         if (value != null) {
-                            context.addAttributeValue(attributeId, converter.toDirectory(value));
+                            directoryValues.add(toDirectory(ameta, converter, value));
                         }
                     }
+
+                    context.setAttributeValues(attributeId, directoryValues.toArray());
                 } else {
                     // remove the attribute from the entry
                     context.setAttributeValues(attributeId, null);
                 }
             } else {
+                final Object value = assistant.getValue(transientObject, propertyName);
 
-                final Object currentValue = converter.toDirectory(assistant.getValue(transientObject, propertyName));
+                context.setAttributeValue(attributeId, value != null ? toDirectory(ameta, converter, value) : null);
+            }
+        }
+    }
 
-                final Object persistedValue = converter.fromDirectory(context.getObjectAttribute(attributeId));
+    private Object toDirectory(final AttributeMetadata ameta, final Converter syntaxConverter, final Object value) {
+        Object syntaxValue = value;
 
-                mergeValue(context, attributeId, currentValue, persistedValue);
+        if (!syntaxConverter.objectType().isInstance(value)) {
+            final Converter attributeConverter = ameta.getAttributeConverter();
 
+            if (attributeConverter != null) {
+                syntaxValue = attributeConverter.toDirectory(value);
+            } else {
+                // reference to another entry
+                syntaxValue = new EntryResolverConverter<>(ameta.getObjectType(), getSession()).toDirectory(value);
             }
         }
+
+        return syntaxConverter.toDirectory(syntaxValue);
     }
 
-    private void mergeValue(DirContextOperations context, String attributeId, Object currentValue, Object persistedValue) {
-        if (persistedValue != null && currentValue != null) {
-            if (!persistedValue.equals(currentValue)) {
-                context.removeAttributeValue(attributeId, persistedValue);
+    /**
+     * the entry may hold the attribute under one of its aliases
+     */
+    private static String getAttributeId(final DirContextOperations context, final AttributeMetadata ameta) {
+        final Attributes attributes = context.getAttributes();
 
-                context.addAttributeValue(attributeId, currentValue);
+        if (attributes.get(ameta.getAttirbuteName()) == null) {
+            for (String alias : ameta.getAttributeAliases()) {
+                if (attributes.get(alias) != null) {
+                    return alias;
+                }
             }
-        } else if (persistedValue != null) {
-            context.removeAttributeValue(attributeId, persistedValue);
-        } else if (currentValue != null) {
-            context.removeAttributeValue(attributeId, persistedValue); // null
-            context.addAttributeValue(attributeId, currentValue);
         }
+
+        return ameta.getAttirbuteName();
     }
 
     private DirContextOperations doContextLookup(final Name dn) {
-        final DirContextOperations ctx = operations.lookupContext(checkNotNull(dn, "dn is null"));
+        checkNotNull(dn, "dn is null");
+
+        final DirContextOperations ctx = getSession().hedgedRead(operations, template -> template.lookupContext(dn));
 
         final Name _dn = ctx.getDn();
 
@@ -272,22 +950,45 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
         return ctx;
     }
 
-    private static class CountContextMapper extends AbstractContextMapper<Long> {
+    private static class ExportCallbackHandler implements NameClassPairCallbackHandler {
+
+        private final EntryWriter writer;
 
-        private long cp;
+        private long count;
 
-        CountContextMapper() {
-            cp = 0;
+        ExportCallbackHandler(final EntryWriter writer) {
+            this.writer = writer;
         }
 
         @Override
-        public Long doMapFromContext(DirContextOperations context) {
-            cp++;
-            return cp;
+        public void handleNameClassPair(final NameClassPair nameClassPair) throws NamingException {
+            final SearchResult result = (SearchResult) nameClassPair;
+
+            try {
+                writer.write(result.getNameInNamespace(), result.getAttributes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            count++;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private static class CountCallbackHandler implements NameClassPairCallbackHandler {
+
+        private long count;
+
+        @Override
+        public void handleNameClassPair(final NameClassPair nameClassPair) {
+            count++;
         }
 
         public long getCount() {
-            return cp;
+            return count;
         }
     }
 
@@ -304,7 +1005,8 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
     };
 
     @Override
-    public Iterable<List<T>> pages(final int pageSize, String filter, Name base, final SearchControls controls) {
+    public Iterable<List<T>> pages(final int pageSize, String filter, Name base, final SearchControls controls,
+            final SearchOptions options) {
 
         class PagedResultIterator implements Iterator<List<T>> {
 
@@ -324,7 +1026,8 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
                 PagedResultsDirContextProcessor processor = new PagedResultsDirContextProcessor(pageSize, cookie);
 
                 try {
-                    List<T> results = search(base, controls, filter, Optional.of(processor));
+                    List<T> results = search(base, controls, filter, processor(options, Optional.of(processor)),
+                            options.isEager());
 
                     cookie = processor.getCookie();
 
@@ -338,48 +1041,74 @@ public class SpringOperationsImpl<T> extends OperationsImpl<T> {
         return () -> new PagedResultIterator();
     }
 
-    private class MappingContextMapper extends AbstractContextMapper<T> {
+    /**
+     * @return the metadata of the most specific persistent class of the entry
+     */
+    private ClassMetadata<? extends T> entryMetadata(final DirContextOperations context) {
+        final String[] objectClasses = context.getStringAttributes("objectClass");
 
-        private final ClassAssistant<T> assistant;
+        assert objectClasses != null && objectClasses.length > 0;
 
-        MappingContextMapper(final ClassAssistant<T> assistant) {
-            this.assistant = checkNotNull(assistant);
+        try {
+            return metadataChecker.convert(getSession().getSessionFactory().getClassMetadata(objectClasses));
+        } catch (ClassNotFoundException e) {
+            return metadata;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new RuntimeException(e);
         }
+    }
 
-        @Override
-        protected T doMapFromContext(final DirContextOperations ctx) {
-            final T entry;
-            final Name dn = ctx.getDn();
+    /**
+     * @param eager a plain instance, with every attribute loaded, rather
+     * than a proxy
+     */
+    private T mapEntry(final DirContextOperations context, final ClassMetadata<? extends T> entryMetadata,
+            final boolean eager) {
+        final T entry;
 
-            try {
-                entry = typeChecker.convert(dirContextObjectFactory(checkNotNull(ctx)));
-
-                assistant.setIdentifier(entry, dn);
-            } catch (InstantiationException | InvalidNameException | IllegalAccessException | InvocationTargetException
-                    | ClassNotFoundException e) {
-                throw new RuntimeException(e);
-            }
+        try {
+            entry = eager ? load(entryMetadata, context) : proxy(entryMetadata, context);
 
-            return entry;
+            assistant.setIdentifier(entry, context.getDn());
+        } catch (InstantiationException | InvalidNameException | IllegalAccessException | InvocationTargetException e) {
+            throw new RuntimeException(e);
+        } catch (NamingException e) {
+            throw LdapUtils.convertLdapException(e);
         }
+
+        return entry;
     }
 
-    private T dirContextObjectFactory(final DirContextOperations context) throws ClassNotFoundException,
-            InstantiationException, InvalidNameException, IllegalAccessException, InvocationTargetException {
-        final String[] objectClasses = context.getStringAttributes("objectClass");
+    private <E extends T> E proxy(final ClassMetadata<E> entryMetadata, final DirContextOperations context)
+            throws InstantiationException, IllegalAccessException, InvalidNameException {
+        return getSession().getSessionFactory().getProxyFactory(entryMetadata.getPersistentClass(), new Class<?>[0])
+                .getProxy(getSession(), context);
+    }
 
-        assert objectClasses != null && objectClasses.length > 0;
+    @SuppressWarnings("unchecked")
+    private <E extends T> E load(final ClassMetadata<E> entryMetadata, final DirContextOperations context)
+            throws InstantiationException, IllegalAccessException, InvocationTargetException, NamingException {
+        final E entry = entryMetadata.getDefaultConstructor().newInstance();
 
-        SpringSessionFactoryImpl sessionFactory = getSession().getSessionFactory();
+        final SpringProxyFactory<E> factory = (SpringProxyFactory<E>) getSession().getSessionFactory()
+                .<E, DirContextOperations> getProxyFactory(entryMetadata.getPersistentClass(), new Class<?>[0]);
 
-        Class<? extends T> realPersistentClass;
+        final Name dn = context.getDn();
+
+        assistant.setIdentifier(entry, dn);
+
+        // cached before its references are resolved, a reference back to it
+        // (A -> B -> A) finds it instead of loading it again
+        entryCache.store(dn, entry);
 
         try {
-            realPersistentClass = metadataChecker.convert(sessionFactory.getClassMetadata(objectClasses)).getPersistentClass();
-        } catch (ClassNotFoundException e) {
-            realPersistentClass = metadata.getPersistentClass();
+            factory.getMapper(entryMetadata).loadAll(entry, context, getSession());
+        } catch (RuntimeException | NamingException e) {
+            entryCache.remove(dn);
+
+            throw e;
         }
 
-        return sessionFactory.getProxyFactory(realPersistentClass, new Class<?>[0]).getProxy(getSession(), context);
+        return entry;
     }
 }
@@ -23,23 +23,25 @@ package fr.mtlx.odm.spring;
  * <http://www.gnu.org/licenses/gpl-3.0.html>.
  * #L%
  */
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import fr.mtlx.odm.AttributeMetadata;
 import fr.mtlx.odm.ClassMetadata;
-import fr.mtlx.odm.ContextResolver;
 import fr.mtlx.odm.ProxyFactory;
 import fr.mtlx.odm.Session;
 import fr.mtlx.odm.utils.TypeCheckConverter;
 import static java.lang.System.identityHashCode;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.BitSet;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import javassist.util.proxy.MethodFilter;
 import javassist.util.proxy.MethodHandler;
 import javassist.util.proxy.ProxyObject;
+import javax.annotation.Nullable;
 import javax.naming.InvalidNameException;
 import javax.naming.NamingException;
 import org.springframework.ldap.core.DirContextOperations;
@@ -57,6 +59,10 @@ public class SpringProxyFactory<T> implements ProxyFactory<T, DirContextOperatio
 
     private final TypeCheckConverter<T> typeChecker;
 
+    private volatile EntryMapper<T> mapper;
+
+    private volatile Map<Method, Dispatch> dispatchTable;
+
     public SpringProxyFactory(final Class<T> superClass, final Class<?>[] interfaces) {
         this.superClass = checkNotNull(superClass);
 
@@ -86,131 +92,309 @@ public class SpringProxyFactory<T> implements ProxyFactory<T, DirContextOperatio
     public T getProxy(final Session session, final DirContextOperations context)
             throws InstantiationException, IllegalAccessException, InvalidNameException {
 
-        class DirContextHandler<T> implements MethodHandler {
+        ProxyObject proxy = (ProxyObject) proxyClass.newInstance();
 
-            private final Map<String, Boolean> invoked = Maps.newHashMap();
-            private final ClassMetadata<T> metadata;
-            private final Class<T> proxiedClass;
-            private final Object proxiedObject;
-            private final ContextResolver resolver;
+        final ClassMetadata<T> metadata = session.getSessionFactory().getClassMetadata(superClass);
 
-            DirContextHandler(ProxyObject proxiedObject, Class<T> proxiedClass) {
-                this.proxiedObject = checkNotNull(proxiedObject, "proxiedObject is null");
+        proxy.setHandler(new DirContextHandler<>(session, context, proxy, superClass, getMapper(metadata),
+                getDispatchTable(metadata)));
 
-                this.proxiedClass = checkNotNull(proxiedClass, "proxiedClass is null");
+        return (T) proxy;
+    }
 
-                this.metadata = session.getSessionFactory().getClassMetadata(proxiedClass);
+    /**
+     * @return the mapper of the persistent class, generated on first use
+     * since the metadata is complete only once the session factory is
+     * initialized
+     */
+    EntryMapper<T> getMapper(final ClassMetadata<T> metadata) {
+        EntryMapper<T> result = mapper;
 
-                this.resolver = new DirContextOperationsResolver(context, metadata, session);
-            }
+        if (result == null) {
+            synchronized (this) {
+                result = mapper;
 
-            private String capitalizeFirstLetter(String original) {
-                if (original.length() == 0) {
-                    return original;
+                if (result == null) {
+                    mapper = result = EntryMapperGenerator.generate(metadata);
                 }
-
-                return original.substring(0, 1).toUpperCase() + original.substring(1);
             }
+        }
+
+        return result;
+    }
 
-            private String getPropertyName(final Method method) {
-                final String name = method.getName();
+    private Map<Method, Dispatch> getDispatchTable(final ClassMetadata<T> metadata) {
+        Map<Method, Dispatch> result = dispatchTable;
 
-                if (name.startsWith("get") || name.startsWith("set")) {
-                    return name.substring(3);
-                } else if (name.startsWith("is")) {
-                    return name.substring(2);
+        if (result == null) {
+            synchronized (this) {
+                result = dispatchTable;
+
+                if (result == null) {
+                    dispatchTable = result = Dispatch.table(metadata);
                 }
+            }
+        }
 
-                return null;
+        return result;
+    }
+
+    /**
+     * @return the handler of a proxy built by a SpringProxyFactory
+     */
+    static Optional<DirContextHandler<?>> getHandler(@Nullable final Object object) {
+        if (object instanceof ProxyObject) {
+            final MethodHandler handler = ((ProxyObject) object).getHandler();
+
+            if (handler instanceof DirContextHandler) {
+                return Optional.of((DirContextHandler<?>) handler);
             }
+        }
 
-            private Method getSetter(final String property)
-                    throws SecurityException, NoSuchMethodException {
-                final AttributeMetadata attr = metadata.getAttributeMetadata(property);
+        return Optional.empty();
+    }
 
-                if (attr.isMultivalued()) {
-                    return proxiedClass.getMethod(getSetterName(property), attr.getCollectionType());
-                } else {
-                    return proxiedClass.getMethod(getSetterName(property), attr.getObjectType());
+    /**
+     * What the handler does for a method of the persistent class, resolved
+     * once per class
+     */
+    static final class Dispatch {
+
+        enum Kind {
+
+            TO_STRING, EQUALS, HASH_CODE,
+            /**
+             * loads the attribute of the slot on first call
+             */
+            GETTER,
+            /**
+             * marks the attribute of the slot as assigned
+             */
+            SETTER,
+            PROCEED
+        }
+
+        private static final Dispatch TO_STRING = new Dispatch(Kind.TO_STRING, -1);
+
+        private static final Dispatch EQUALS = new Dispatch(Kind.EQUALS, -1);
+
+        private static final Dispatch HASH_CODE = new Dispatch(Kind.HASH_CODE, -1);
+
+        static final Dispatch PROCEED = new Dispatch(Kind.PROCEED, -1);
+
+        final Kind kind;
+
+        final int slot;
+
+        private Dispatch(final Kind kind, final int slot) {
+            this.kind = kind;
+
+            this.slot = slot;
+        }
+
+        /**
+         * @return the dispatch of every method of the class and its super
+         * classes; the map is not modified afterwards
+         */
+        static Map<Method, Dispatch> table(final ClassMetadata<?> metadata) {
+            final Map<Method, Dispatch> table = Maps.newHashMap();
+
+            for (Class<?> c = metadata.getPersistentClass(); c != null; c = c.getSuperclass()) {
+                for (Method method : c.getDeclaredMethods()) {
+                    table.put(method, of(method, metadata));
                 }
             }
 
-            private String getSetterName(final String property) {
-                return "set" + capitalizeFirstLetter(property);
-            }
+            return table;
+        }
 
-            private boolean hasGetterSignature(Method method) {
-                return method.getParameterTypes().length == 0
-                        && method.getReturnType() != null;
+        private static Dispatch of(final Method method, final ClassMetadata<?> metadata) {
+            final String name = method.getName();
+
+            if ("toString".equals(name)) {
+                return TO_STRING;
+            } else if ("equals".equals(name)) {
+                return EQUALS;
+            } else if ("hashCode".equals(name)) {
+                return HASH_CODE;
             }
 
-            private boolean hasSetterSignature(Method method) {
-                return method.getParameterTypes().length == 1
-                        && (method.getReturnType() == null || method
-                        .getReturnType() == void.class);
+            final AttributeMetadata attr = getAttributeMetadata(metadata, getPropertyName(method));
+
+            if (attr == null) {
+                return PROCEED;
+            } else if (hasSetterSignature(method) && name.startsWith("set")) {
+                return new Dispatch(Kind.SETTER, attr.getSlot());
+            } else if (hasGetterSignature(method)) {
+                return new Dispatch(Kind.GETTER, attr.getSlot());
             }
 
-            @Override
-            public Object invoke(Object object, final Method method, final Method method1, final Object[] args) throws Exception {
-                final String name = method.getName();
-
-                if ("toString".equals(name)) {
-                    return proxiedClass.getName() + "@" + identityHashCode(object);
-                } else if ("equals".equals(name)) {
-                    return proxiedObject == object;
-                } else if ("hashCode".equals(name)) {
-                    return identityHashCode(object);
-                } else if (!isHandled(method)) {
-                    return method1.invoke(object, args);
-                }
-                final String property = getPropertyName(method);
+            return PROCEED;
+        }
 
-                assert property != null;
+        private static String getPropertyName(final Method method) {
+            final String name = method.getName();
 
-                if (!invoked.containsKey(property)) {
-                    setProperty(object, property);
+            if (name.startsWith("get") || name.startsWith("set")) {
+                return name.substring(3);
+            } else if (name.startsWith("is")) {
+                return name.substring(2);
+            }
 
-                    invoked.put(property, true);
-                }
+            return null;
+        }
 
-                return method1.invoke(proxiedObject);
+        /**
+         * accessors may be named after the property or after one of the
+         * attribute names (getSurname, getSn); the identifier is not mapped
+         */
+        private static AttributeMetadata getAttributeMetadata(final ClassMetadata<?> metadata, final String property) {
+            if (property == null || property.equals(metadata.getIdentifierPropertyName())) {
+                return null;
             }
 
-            private void setProperty(final Object object, final String property)
-                    throws NamingException, InstantiationException,
-                    IllegalAccessException, InvocationTargetException,
-                    NoSuchMethodException {
+            final AttributeMetadata attr = metadata.getAttributeMetadata(property);
+
+            return attr != null ? attr : metadata.getAttributeMetadataByAttributeName(property);
+        }
+
+        private static boolean hasGetterSignature(Method method) {
+            return method.getParameterTypes().length == 0
+                    && method.getReturnType() != null;
+        }
 
-                final Object value = metadata.getIdentifierPropertyName().equals(property)
-                        ? context.getDn()
-                        : resolver.getProperty(property);
+        private static boolean hasSetterSignature(Method method) {
+            return method.getParameterTypes().length == 1
+                    && (method.getReturnType() == null || method
+                    .getReturnType() == void.class);
+        }
+    }
 
-                getSetter(property).invoke(object, value);
+    /**
+     * Loads mapped properties from the context on first access, and records
+     * which properties were assigned since the entry was read or last
+     * written.
+     */
+    static class DirContextHandler<T> implements MethodHandler {
+
+        private final Map<Method, Dispatch> dispatchTable;
+        private final BitSet loaded = new BitSet();
+        private final BitSet dirty = new BitSet();
+        private final Class<T> proxiedClass;
+        private final Object proxiedObject;
+        private final Session session;
+        private final DirContextOperations context;
+        private final EntryMapper<T> mapper;
+        private FetchGroup fetchGroup;
+        private boolean loading;
+
+        DirContextHandler(Session session, DirContextOperations context, ProxyObject proxiedObject, Class<T> proxiedClass,
+                EntryMapper<T> mapper, Map<Method, Dispatch> dispatchTable) {
+            checkNotNull(session, "session is null");
+
+            this.proxiedObject = checkNotNull(proxiedObject, "proxiedObject is null");
+
+            this.proxiedClass = checkNotNull(proxiedClass, "proxiedClass is null");
+
+            this.session = session;
+
+            this.context = checkNotNull(context, "context is null");
+
+            this.mapper = checkNotNull(mapper, "mapper is null");
+
+            this.dispatchTable = checkNotNull(dispatchTable, "dispatchTable is null");
+        }
+
+        /**
+         * @return true if a mapped property was assigned since the last write
+         */
+        boolean isDirty() {
+            return !dirty.isEmpty();
+        }
+
+        /**
+         * a loaded collection may have been changed in place, without going
+         * through the setter
+         *
+         * @param attribute of the proxied class or of a superclass: slots
+         * are numbered per class, the property is looked up by name
+         */
+        boolean isDirty(final AttributeMetadata attribute) {
+            final AttributeMetadata own = mapper.getMetadata().getAttributeMetadata(attribute.getPropertyName());
+
+            checkArgument(own != null, "%s is not a property of %s", attribute.getPropertyName(), proxiedClass);
+
+            return dirty.get(own.getSlot()) || (own.isMultivalued() && loaded.get(own.getSlot()));
+        }
+
+        void clearDirty() {
+            dirty.clear();
+        }
+
+        /**
+         * @param fetchGroup the entries read along with this one by a search
+         * which left out some attributes
+         */
+        void setFetchGroup(@Nullable final FetchGroup fetchGroup) {
+            this.fetchGroup = fetchGroup;
+        }
+
+        /**
+         * Reads the attribute if the search left it out, along with the
+         * other attributes of the whole group
+         */
+        void fetch(final AttributeMetadata attribute) {
+            if (fetchGroup != null && !fetchGroup.isRequested(attribute)) {
+                fetchGroup.complete();
+
+                fetchGroup = null;
             }
+        }
 
-            private boolean isHandled(Method method) {
-                if (hasGetterSignature(method)) {
-                    final String property = getPropertyName(method);
+        @Override
+        public Object invoke(Object object, final Method method, final Method method1, final Object[] args) throws Exception {
+            final Dispatch dispatch = dispatchTable.getOrDefault(method, Dispatch.PROCEED);
+
+            switch (dispatch.kind) {
+            case TO_STRING:
+                return proxiedClass.getName() + "@" + identityHashCode(object);
+            case EQUALS:
+                return proxiedObject == object;
+            case HASH_CODE:
+                return identityHashCode(object);
+            case SETTER:
+                if (!loading) {
+                    dirty.set(dispatch.slot);
+
+                    // the assigned value supersedes the directory one
+                    loaded.set(dispatch.slot);
+                }
 
-                    if (property != null) {
-                        if (property.equals(metadata.getIdentifierPropertyName())) {
-                            return false;
-                        }
+                return method1.invoke(object, args);
+            case GETTER:
+                if (!loaded.get(dispatch.slot)) {
+                    setProperty(object, dispatch.slot);
 
-                        return metadata
-                                .getAttributeMetadata(property) != null;
-                    }
+                    loaded.set(dispatch.slot);
                 }
 
-                return false;
+                return method1.invoke(object, args);
+            default:
+                return method1.invoke(object, args);
             }
         }
 
-        ProxyObject proxy = (ProxyObject) proxyClass.newInstance();
+        private void setProperty(final Object object, final int slot) throws NamingException {
+            fetch(mapper.getAttribute(slot));
 
-        proxy.setHandler(new DirContextHandler<>(proxy, superClass));
+            loading = true;
 
-        return (T) proxy;
+            try {
+                mapper.load(object, slot, context, session);
+            } finally {
+                loading = false;
+            }
+        }
     }
 
     @Override
@@ -23,18 +23,28 @@ package fr.mtlx.odm.spring;
  * <http://www.gnu.org/licenses/gpl-3.0.html>.
  * #L%
  */
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import javax.naming.directory.DirContext;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.ldap.core.ContextSource;
 import org.springframework.ldap.core.LdapTemplate;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import fr.mtlx.odm.CacheFactory;
 import fr.mtlx.odm.ConcurentMapCacheFactory;
 import fr.mtlx.odm.NoCacheFactory;
@@ -46,7 +56,10 @@ import fr.mtlx.odm.converters.DefaultConverters;
 
 @SuppressWarnings("serial")
 public class SpringSessionFactoryImpl extends SessionFactoryImpl implements
-        InitializingBean {
+        InitializingBean, DisposableBean {
+
+    // floor of the adaptive limit of operations in flight
+    private static final int MIN_CONCURRENCY = 4;
 
     private final ContextSource contextSource;
 
@@ -62,8 +75,41 @@ public class SpringSessionFactoryImpl extends SessionFactoryImpl implements
     
     private CacheFactory secondLevelCacheFactory = new NoCacheFactory();
 
+    private int batchConcurrency = 4;
+
+    private List<ContextSource> readReplicas = Collections.emptyList();
+
+    private ContextSourceRouter.Strategy readStrategy = ContextSourceRouter.Strategy.ROUND_ROBIN;
+
+    private ContextSourceRouter router;
+
+    private HedgingPolicy hedgingPolicy;
+
+    // no admission control
+    private int maxConcurrency = 0;
+
+    private Duration admissionTimeout = Duration.ofSeconds(1);
+
+    private int admissionQueue = 1000;
+
+    private int countPageSize = 1000;
+
+    private int referenceBatchSize = 100;
+
+    private transient ExecutorService searchExecutor;
+
+    private transient ScheduledExecutorService scheduler;
+
+    /**
+     * @return the context source routing reads to the replicas, if any, and
+     * writes to the primary directory
+     */
     public ContextSource getContextSource() {
-        return contextSource;
+        return router != null ? router : contextSource;
+    }
+
+    ContextSourceRouter getRouter() {
+        return router;
     }
 
     public DirContext getDirContext() {
@@ -88,9 +134,34 @@ public class SpringSessionFactoryImpl extends SessionFactoryImpl implements
 	    cache = checkNotNull(secondLevelCacheFactory.getCache());
 	}
 
+	if (maxConcurrency > 0) {
+	    final List<ContextSource> limitedReplicas = Lists.newArrayList();
+
+	    for (ContextSource replica : readReplicas) {
+		limitedReplicas.add(limit(replica));
+	    }
+
+	    router = new ContextSourceRouter(limit(contextSource), limitedReplicas, readStrategy);
+	} else {
+	    router = new ContextSourceRouter(contextSource, readReplicas, readStrategy);
+	}
+
 	initialize();
     }
 
+    /**
+     * @return the context source behind its own concurrency limiter
+     */
+    private ContextSource limit(final ContextSource target) {
+        final int initialLimit = Math.min(maxConcurrency, 10);
+
+        // a single permit would serialize every read behind a slow one
+        final int minLimit = Math.min(maxConcurrency, MIN_CONCURRENCY);
+
+        return new LimitedContextSource(target, new ConcurrencyLimiter(initialLimit, minLimit, maxConcurrency,
+                admissionTimeout, admissionQueue));
+    }
+
     public LdapTemplate getLdapTemplate() {
         return this.ldapTemplate;
     }
@@ -127,6 +198,155 @@ public class SpringSessionFactoryImpl extends SessionFactoryImpl implements
         this.secondLevelCacheFactory = secondLevelCacheFactory;
     }
 
+    public int getBatchConcurrency() {
+        return batchConcurrency;
+    }
+
+    /**
+     * Maximum number of directory writes in flight during a batch, hence
+     * the number of connections a batch holds from the context source.
+     */
+    public void setBatchConcurrency(int batchConcurrency) {
+        checkArgument(batchConcurrency > 0, "batchConcurrency must be positive");
+
+        this.batchConcurrency = batchConcurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Upper bound of the adaptive limit of operations in flight against
+     * each directory, the primary and every replica; 0 disables the
+     * admission control. The limit does not shrink below 4 operations, or
+     * below this bound if it is lower.
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        checkArgument(maxConcurrency >= 0, "maxConcurrency must not be negative (0 disables the limiter)");
+
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public Duration getAdmissionTimeout() {
+        return admissionTimeout;
+    }
+
+    /**
+     * How long an operation over the limit waits before being rejected
+     */
+    public void setAdmissionTimeout(Duration admissionTimeout) {
+        this.admissionTimeout = checkNotNull(admissionTimeout);
+    }
+
+    public int getAdmissionQueue() {
+        return admissionQueue;
+    }
+
+    /**
+     * Number of operations allowed to wait for a directory, the next ones
+     * are rejected at once
+     */
+    public void setAdmissionQueue(int admissionQueue) {
+        this.admissionQueue = admissionQueue;
+    }
+
+    public int getReferenceBatchSize() {
+        return referenceBatchSize;
+    }
+
+    /**
+     * Number of RDNs in the filter of a search resolving references (see
+     * {@link fr.mtlx.odm.Operations#lookupAll(java.util.Collection)})
+     */
+    public void setReferenceBatchSize(int referenceBatchSize) {
+        checkArgument(referenceBatchSize > 0, "referenceBatchSize must be positive");
+
+        this.referenceBatchSize = referenceBatchSize;
+    }
+
+    public int getCountPageSize() {
+        return countPageSize;
+    }
+
+    /**
+     * Size of the pages of DNs read when counting entries by scanning them
+     */
+    public void setCountPageSize(int countPageSize) {
+        checkArgument(countPageSize > 0, "countPageSize must be positive");
+
+        this.countPageSize = countPageSize;
+    }
+
+    /**
+     * runs the asynchronous searches
+     */
+    synchronized ExecutorService getSearchExecutor() {
+        if (searchExecutor == null) {
+            searchExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("odm-search-%d")
+                    .setDaemon(true).build());
+        }
+
+        return searchExecutor;
+    }
+
+    /**
+     * enforces the search deadlines
+     */
+    synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("odm-deadline-%d").setDaemon(true).build());
+        }
+
+        return scheduler;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (searchExecutor != null) {
+            searchExecutor.shutdownNow();
+        }
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public List<ContextSource> getReadReplicas() {
+        return readReplicas;
+    }
+
+    /**
+     * Directories serving lookups, searches and counts; a session reads from
+     * the primary once it has written to it.
+     */
+    public void setReadReplicas(List<ContextSource> readReplicas) {
+        this.readReplicas = checkNotNull(readReplicas);
+    }
+
+    public ContextSourceRouter.Strategy getReadStrategy() {
+        return readStrategy;
+    }
+
+    public void setReadStrategy(ContextSourceRouter.Strategy readStrategy) {
+        this.readStrategy = checkNotNull(readStrategy);
+    }
+
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Sends lookups and unique results to a second replica when the first
+     * one is slow to answer; requires two read replicas at least.
+     *
+     * @param hedgingPolicy null to disable hedging
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
     public SpringSessionFactoryImpl(final ContextSource contextSource) {
 	this.contextSource = checkNotNull(contextSource);
 
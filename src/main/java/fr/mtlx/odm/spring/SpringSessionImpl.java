@@ -23,9 +23,15 @@ package fr.mtlx.odm.spring;
  * <http://www.gnu.org/licenses/gpl-3.0.html>.
  * #L%
  */
+import static com.google.common.base.Preconditions.checkState;
+
 import java.util.Optional;
+import java.util.function.Function;
 
+import org.springframework.ldap.core.ContextSource;
 import org.springframework.ldap.core.DirContextOperations;
+import org.springframework.ldap.core.LdapOperations;
+import org.springframework.ldap.core.LdapTemplate;
 
 import fr.mtlx.odm.CacheFactory;
 import fr.mtlx.odm.Operations;
@@ -39,12 +45,22 @@ public class SpringSessionImpl extends SessionImpl  {
 
     private final TypeSafeCache<DirContextOperations> contextCache;
 
+    private final ContextSource contextSource;
+
+    private final LdapTemplate ldapOperations;
+
     SpringSessionImpl(final SpringSessionFactoryImpl sessionFactory, final CacheFactory sessionCacheFactory, final CacheFactory contextCacheFactory) {
 	super(sessionCacheFactory);
 	
         this.sessionFactory = sessionFactory;
 
         this.contextCache = new TypeSafeCache<DirContextOperations>(DirContextOperations.class, Optional.ofNullable(contextCacheFactory.getCache()).orElse(new NoCache()));
+
+        final ContextSourceRouter router = sessionFactory.getRouter();
+
+        this.contextSource = router != null ? router.sticky() : sessionFactory.getContextSource();
+
+        this.ldapOperations = new LdapTemplate(contextSource);
     }
 
     @Override
@@ -57,14 +73,63 @@ public class SpringSessionImpl extends SessionImpl  {
         return new SpringOperationsImpl<>(this, persistentClass);
     }
     
+    /**
+     * @return the context source of this session, reading its own writes
+     */
+    public ContextSource getContextSource() {
+        return contextSource;
+    }
+
+    /**
+     * @return the operations on the context source of this session, shared
+     * by every reader of the session
+     */
+    LdapOperations getLdapOperations() {
+        return ldapOperations;
+    }
+
+    /**
+     * Runs a read hedged over the replicas when the factory has a
+     * {@link HedgingPolicy} and the session has not written yet.
+     *
+     * @param operations reading from the context source of this session,
+     * runs the read when it is not hedged
+     */
+    <R> R hedgedRead(final LdapOperations operations, final Function<LdapOperations, R> read) {
+        final HedgingPolicy policy = sessionFactory.getHedgingPolicy();
+
+        if (policy != null && contextSource instanceof ContextSourceRouter.StickyContextSource) {
+            final ContextSourceRouter.StickyContextSource sticky = (ContextSourceRouter.StickyContextSource) contextSource;
+
+            if (sticky.isReadingReplicas()) {
+                return sticky.getRouter().hedge(read, policy, sessionFactory.getSearchExecutor());
+            }
+        }
+
+        return read.apply(operations);
+    }
+
+    /**
+     * @return the endpoint the next read of this session goes to, for reads
+     * depending on the server
+     */
+    ContextSourceRouter.Endpoint readEndpoint() {
+        checkState(contextSource instanceof ContextSourceRouter.StickyContextSource, "the session has no router");
+
+        return ((ContextSourceRouter.StickyContextSource) contextSource).readEndpoint();
+    }
+
     public TypeSafeCache<DirContextOperations> getContextCache() {
         return contextCache;
     }
 
     @Override
     public void close() {
-        contextCache.clear();
-
-        super.close();
+        // pending modifications are computed against the cached contexts
+        try {
+            super.close();
+        } finally {
+            contextCache.clear();
+        }
     }
 }
@@ -0,0 +1,133 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static com.google.common.base.Preconditions.checkArgument;
+
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+
+import org.springframework.ldap.control.AbstractRequestControlDirContextProcessor;
+
+/**
+ * Virtual list view (draft-ietf-ldapext-ldapv3-vlv): asks the server for a
+ * window of a sorted result set, by offset.
+ *
+ * The server must also receive a sort control.
+ */
+class VirtualListViewDirContextProcessor extends AbstractRequestControlDirContextProcessor {
+
+    static final String REQUEST_OID = "2.16.840.1.113730.3.4.9";
+
+    static final String RESPONSE_OID = "2.16.840.1.113730.3.4.10";
+
+    private final int offset;
+
+    private final int size;
+
+    private int targetPosition;
+
+    private int resultContentCount = -1;
+
+    /**
+     * @param offset index of the first entry, from 0
+     * @param size maximum number of entries returned; 0 only asks for the
+     * content count
+     */
+    VirtualListViewDirContextProcessor(final int offset, final int size) {
+        checkArgument(offset >= 0, "offset must be positive");
+        checkArgument(size >= 0, "size must be positive");
+
+        this.offset = offset;
+
+        this.size = size;
+    }
+
+    byte[] encode() {
+        // the target entry is included in the afterCount
+        final int afterCount = Math.max(size - 1, 0);
+
+        return Ber.element(Ber.SEQUENCE,
+                Ber.integer(0),
+                Ber.integer(afterCount),
+                // byOffset, with an unknown content count
+                Ber.element(0xa0, Ber.integer(offset + 1), Ber.integer(0)));
+    }
+
+    @Override
+    public Control createRequestControl() {
+        return new BasicControl(REQUEST_OID, Control.CRITICAL, encode());
+    }
+
+    @Override
+    public void postProcess(final DirContext ctx) throws NamingException {
+        final Control[] controls = ((LdapContext) ctx).getResponseControls();
+
+        if (controls == null) {
+            return;
+        }
+
+        for (Control control : controls) {
+            if (RESPONSE_OID.equals(control.getID())) {
+                decode(control.getEncodedValue());
+            }
+        }
+    }
+
+    void decode(final byte[] value) throws NamingException {
+        final Ber.Decoder decoder = new Ber.Decoder(value);
+
+        decoder.enter(Ber.SEQUENCE);
+
+        targetPosition = decoder.readInteger(Ber.INTEGER);
+
+        resultContentCount = decoder.readInteger(Ber.INTEGER);
+
+        final int result = decoder.readInteger(Ber.ENUMERATED);
+
+        if (result != 0) {
+            throw new OperationNotSupportedException(String.format("virtual list view failed (result %d)", result));
+        }
+    }
+
+    /**
+     * @return the position of the first returned entry according to the
+     * server, from 1
+     */
+    public int getTargetPosition() {
+        return targetPosition;
+    }
+
+    /**
+     * @return the server's estimate of the size of the result set, or -1 if
+     * the server did not answer
+     */
+    public int getContentCount() {
+        return resultContentCount;
+    }
+}
@@ -0,0 +1,110 @@
+package fr.mtlx.odm;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import javax.naming.ldap.LdapName;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.beanutils.PropertyUtils;
+
+/**
+ * Compares {@link PropertyAccessor} with the commons-beanutils calls it
+ * replaced in {@link ClassAssistant}; not a unit test, run its main method.
+ */
+public class AccessorBenchmark {
+
+    public static class Bean {
+
+        private LdapName dn;
+
+        private String cn;
+
+        public LdapName getDn() {
+            return dn;
+        }
+
+        public void setDn(LdapName dn) {
+            this.dn = dn;
+        }
+
+        public String getCn() {
+            return cn;
+        }
+
+        public void setCn(String cn) {
+            this.cn = cn;
+        }
+    }
+
+    private static final int ITERATIONS = 1000000;
+
+    private interface Case {
+
+        Object run(Bean bean) throws Exception;
+    }
+
+    private static void measure(final String name, final Bean bean, final Case c) throws Exception {
+        Object sink = null;
+
+        // warm up
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = c.run(bean);
+        }
+
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = c.run(bean);
+        }
+
+        final long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-32s %8.1f ns/op (%s)%n", name, (double) elapsed / ITERATIONS, sink != null);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Bean bean = new Bean();
+
+        bean.setDn(new LdapName("cn=alex,ou=people,dc=mtlx,dc=fr"));
+
+        final PropertyAccessor dn = PropertyAccessor.of(Bean.class, Bean.class.getDeclaredField("dn"));
+
+        final PropertyAccessor cn = PropertyAccessor.of(Bean.class, Bean.class.getDeclaredField("cn"));
+
+        measure("beanutils getIdentifier", bean, b -> new LdapName(BeanUtils.getProperty(b, "dn")));
+        measure("accessor getIdentifier", bean, b -> ((LdapName) dn.get(b)).clone());
+
+        measure("beanutils setSimpleProperty", bean, b -> {
+            PropertyUtils.setSimpleProperty(b, "cn", "alex");
+            return b;
+        });
+        measure("accessor set", bean, b -> {
+            cn.set(b, "alex");
+            return b;
+        });
+
+        measure("beanutils getSimpleProperty", bean, b -> PropertyUtils.getSimpleProperty(b, "cn"));
+        measure("accessor get", bean, cn::get);
+    }
+}
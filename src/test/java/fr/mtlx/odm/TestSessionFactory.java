@@ -23,8 +23,11 @@ package fr.mtlx.odm;
  * <http://www.gnu.org/licenses/gpl-3.0.html>.
  * #L%
  */
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -35,6 +38,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.ldap.core.ContextSource;
 
+import fr.mtlx.odm.model.GroupOfNames;
+import fr.mtlx.odm.model.InetOrgPerson;
+import fr.mtlx.odm.model.OrganizationalPerson;
 import fr.mtlx.odm.model.Person;
 
 public class TestSessionFactory {
@@ -79,6 +85,42 @@ public class TestSessionFactory {
         assertFalse(sessionFactory.isPersistentClass(ExtPerson.class));
     }
 
+    @Test
+    public void isPersistentAfterMapping() throws MappingException {
+        assertFalse(sessionFactory.isPersistentClass(GroupOfNames.class));
+
+        sessionFactory.addClass(GroupOfNames.class);
+
+        assertTrue(sessionFactory.isPersistentClass(GroupOfNames.class));
+
+        assertThat(sessionFactory.getMostSpecificMetadata(InetOrgPerson.class).getPersistentClass(),
+                equalTo((Object) OrganizationalPerson.class));
+    }
+
+    @Test
+    public void objectClasses() throws Exception {
+        final SessionFactoryImpl factory = new SessionFactory2(new Class<?>[] { Person.class, GroupOfNames.class,
+                InetOrgPerson.class, OrganizationalPerson.class });
+
+        assertThat(factory.getClassMetadata(new String[] { "top", "person", "organizationalPerson",
+                "inetOrgPerson" }).getPersistentClass(), equalTo((Object) InetOrgPerson.class));
+
+        assertThat(factory.getClassMetadata(new String[] { "top", "PERSON", "organizationalperson" })
+                .getPersistentClass(), equalTo((Object) OrganizationalPerson.class));
+
+        assertThat(factory.getClassMetadata(new String[] { "top", "person", "extensibleObject" })
+                .getPersistentClass(), equalTo((Object) Person.class));
+
+        assertThat(factory.getClassMetadata(new String[] { "top", "groupOfNames" }).getPersistentClass(),
+                equalTo((Object) GroupOfNames.class));
+
+        // remembered
+        assertThat(factory.getClassMetadata(new String[] { "person", "top" }).getPersistentClass(),
+                equalTo((Object) Person.class));
+
+        assertThat(factory.getClassMetadata(new String[] { "top", "device" }), nullValue());
+    }
+
     @Test
     public void defaultConverters() throws MappingException {
         assertNotNull(sessionFactory
@@ -0,0 +1,159 @@
+package fr.mtlx.odm;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import javax.naming.InvalidNameException;
+import javax.naming.Name;
+import javax.naming.ldap.LdapName;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class TestUnitOfWork {
+
+    private UnitOfWork unitOfWork;
+
+    private OperationsImpl<Object> operations;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() {
+        unitOfWork = new UnitOfWork();
+
+        operations = mock(OperationsImpl.class);
+    }
+
+    private static Name dn(final String dn) throws InvalidNameException {
+        return new LdapName(dn);
+    }
+
+    @Test
+    public void bindThenModify() throws InvalidNameException {
+        final Object entry = new Object();
+
+        unitOfWork.bind(dn("cn=alex,ou=personnes"), entry, operations);
+        unitOfWork.modify(dn("cn=alex,ou=personnes"), entry, operations);
+
+        assertThat(unitOfWork.size(), is(1));
+
+        unitOfWork.flush();
+
+        verify(operations).doBind(entry);
+        verify(operations, never()).doModify(any());
+
+        assertTrue(unitOfWork.isEmpty());
+    }
+
+    @Test
+    public void bindThenUnbind() throws InvalidNameException {
+        unitOfWork.bind(dn("cn=alex,ou=personnes"), new Object(), operations);
+        unitOfWork.unbind(dn("cn=alex,ou=personnes"), operations);
+
+        assertTrue(unitOfWork.isEmpty());
+    }
+
+    @Test
+    public void modifyThenUnbind() throws InvalidNameException {
+        final Object entry = new Object();
+
+        unitOfWork.modify(dn("cn=alex,ou=personnes"), entry, operations);
+        unitOfWork.modify(dn("cn=alex,ou=personnes"), entry, operations);
+        unitOfWork.unbind(dn("cn=alex,ou=personnes"), operations);
+
+        unitOfWork.flush();
+
+        verify(operations, never()).doModify(any());
+        verify(operations).doUnbind(dn("cn=alex,ou=personnes"));
+    }
+
+    @Test
+    public void unbindThenBind() throws InvalidNameException {
+        final Object entry = new Object();
+
+        unitOfWork.unbind(dn("cn=alex,ou=personnes"), operations);
+        unitOfWork.bind(dn("cn=alex,ou=personnes"), entry, operations);
+
+        unitOfWork.flush();
+
+        final InOrder order = inOrder(operations);
+
+        order.verify(operations).doUnbind(dn("cn=alex,ou=personnes"));
+        order.verify(operations).doBind(entry);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unbindThenModify() throws InvalidNameException {
+        unitOfWork.unbind(dn("cn=alex,ou=personnes"), operations);
+        unitOfWork.modify(dn("cn=alex,ou=personnes"), new Object(), operations);
+    }
+
+    @Test
+    public void order() throws InvalidNameException {
+        final Object person = new Object();
+        final Object unit = new Object();
+
+        unitOfWork.unbind(dn("ou=old"), operations);
+        unitOfWork.unbind(dn("cn=bob,ou=old"), operations);
+        unitOfWork.bind(dn("cn=alex,ou=personnes"), person, operations);
+        unitOfWork.bind(dn("ou=personnes"), unit, operations);
+
+        unitOfWork.flush();
+
+        final InOrder order = inOrder(operations);
+
+        order.verify(operations).doBind(unit);
+        order.verify(operations).doBind(person);
+        order.verify(operations).doUnbind(dn("cn=bob,ou=old"));
+        order.verify(operations).doUnbind(dn("ou=old"));
+    }
+
+    @Test
+    public void failedFlush() throws InvalidNameException {
+        final Object entry = new Object();
+
+        doThrow(new IllegalArgumentException()).when(operations).doModify(entry);
+
+        unitOfWork.bind(dn("ou=personnes"), new Object(), operations);
+        unitOfWork.modify(dn("cn=alex,ou=personnes"), entry, operations);
+
+        try {
+            unitOfWork.flush();
+
+            fail();
+        } catch (IllegalArgumentException e) {
+            // the failed modification is kept
+            assertThat(unitOfWork.size(), is(1));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package fr.mtlx.odm.converters;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class TestTimeConverter {
+
+    private final TimeConverter converter = new TimeConverter();
+
+    @Test
+    public void from() {
+        assertThat(converter.from("20131024153012Z"),
+                equalTo(OffsetDateTime.of(2013, 10, 24, 15, 30, 12, 0, ZoneOffset.UTC)));
+
+        assertThat(converter.from("20131024153012.25Z"),
+                equalTo(OffsetDateTime.of(2013, 10, 24, 15, 30, 12, 250000000, ZoneOffset.UTC)));
+
+        assertThat(converter.from("20131024153012,0000001234Z"),
+                equalTo(OffsetDateTime.of(2013, 10, 24, 15, 30, 12, 123, ZoneOffset.UTC)));
+
+        assertThat(converter.from("20131024153012+0200"),
+                equalTo(OffsetDateTime.of(2013, 10, 24, 15, 30, 12, 0, ZoneOffset.ofHours(2))));
+
+        assertThat(converter.from("201310241530-05"),
+                equalTo(OffsetDateTime.of(2013, 10, 24, 15, 30, 0, 0, ZoneOffset.ofHours(-5))));
+
+        // fractions of hour and minute
+        assertThat(converter.from("2013102415.5Z"),
+                equalTo(OffsetDateTime.of(2013, 10, 24, 15, 30, 0, 0, ZoneOffset.UTC)));
+
+        assertThat(converter.from("201310241530.25Z"),
+                equalTo(OffsetDateTime.of(2013, 10, 24, 15, 30, 15, 0, ZoneOffset.UTC)));
+
+        // leap second
+        assertThat(converter.from("20161231235960Z"),
+                equalTo(OffsetDateTime.of(2017, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC)));
+    }
+
+    @Test
+    public void invalid() {
+        for (String value : new String[] { "", "20131024153012", "2013102415Z1", "20131024153012.Z",
+                "20131324153012Z", "20131024153012+2", "2013-10-24T15:30:12Z", "20131024153012+1900",
+                "20131024153075Z" }) {
+            try {
+                converter.from(value);
+
+                throw new AssertionError(value);
+            } catch (ConvertionException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void to() {
+        assertThat(converter.to(OffsetDateTime.of(2013, 10, 24, 15, 30, 12, 0, ZoneOffset.UTC)),
+                equalTo("20131024153012Z"));
+
+        assertThat(converter.to(OffsetDateTime.of(2013, 10, 24, 17, 30, 12, 120000000, ZoneOffset.ofHours(2))),
+                equalTo("20131024153012.12Z"));
+
+        assertThat(converter.to(OffsetDateTime.of(99, 1, 2, 3, 4, 5, 1, ZoneOffset.UTC)),
+                equalTo("00990102030405.000000001Z"));
+    }
+
+    @Test
+    public void attributeConverters() {
+        final OffsetDateTime time = converter.from("20131024153012.5Z");
+
+        final Instant instant = Instant.parse("2013-10-24T15:30:12.500Z");
+
+        assertThat(new InstantConverter().from(time), equalTo(instant));
+
+        assertThat(new DateConverter().from(time), equalTo(Date.from(instant)));
+
+        assertThat(converter.to(new DateConverter().to(Date.from(instant))), equalTo("20131024153012.5Z"));
+    }
+}
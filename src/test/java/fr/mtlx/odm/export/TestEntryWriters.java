@@ -0,0 +1,117 @@
+package fr.mtlx.odm.export;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.ldap.LdapName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.mtlx.odm.ldif.LdifReader;
+import fr.mtlx.odm.ldif.LdifRecord;
+
+public class TestEntryWriters {
+
+    private BasicAttributes attributes;
+
+    @Before
+    public void init() {
+        attributes = new BasicAttributes(true);
+
+        final BasicAttribute objectClass = new BasicAttribute("objectClass");
+        objectClass.add("top");
+        objectClass.add("person");
+        attributes.put(objectClass);
+
+        attributes.put("cn", "alex");
+        attributes.put("sn", "\u00e9l\u00e8ve");
+        attributes.put("description", "say \"hello\"\n");
+        attributes.put("userPassword", new byte[]{1, 2, 3});
+    }
+
+    @Test
+    public void ldif() throws IOException, NamingException {
+        final Path file = Files.createTempFile("odm", ".ldif");
+
+        try {
+            // a small buffer is drained several times per entry
+            try (LdifEntryWriter writer = new LdifEntryWriter(Files.newByteChannel(file,
+                    StandardOpenOption.WRITE), 16)) {
+                writer.write("cn=alex,ou=personnes", attributes);
+                writer.write("cn=bob,ou=personnes", attributes);
+            }
+
+            final List<LdifRecord> records;
+
+            try (LdifReader reader = new LdifReader(file)) {
+                records = reader.records().collect(Collectors.toList());
+            }
+
+            assertThat(records, hasSize(2));
+
+            final LdifRecord alex = records.get(0);
+
+            assertThat(alex.getDn(), is(new LdapName("cn=alex,ou=personnes")));
+            assertThat(alex.getAttributes().get("objectClass").size(), is(2));
+            assertThat(alex.getAttributes().get("cn").get(), is((Object) "alex"));
+            assertThat(new String((byte[]) alex.getAttributes().get("sn").get(), UTF_8), is("\u00e9l\u00e8ve"));
+            assertThat((byte[]) alex.getAttributes().get("userPassword").get(), is(new byte[]{1, 2, 3}));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void jsonLines() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (JsonLinesEntryWriter writer = new JsonLinesEntryWriter(Channels.newChannel(out), 16)) {
+            writer.write("cn=alex,ou=personnes", attributes);
+        }
+
+        final String json = new String(out.toByteArray(), UTF_8);
+
+        assertThat(json, startsWith("{\"dn\":\"cn=alex,ou=personnes\",\"attributes\":{"));
+        assertThat(json, endsWith("}}\n"));
+        assertThat(json, containsString("\"description\":[\"say \\\"hello\\\"\\n\"]"));
+        assertThat(json, containsString("\"userPassword;base64\":[\"AQID\"]"));
+        assertThat(json, containsString("\"sn\":[\"\u00e9l\u00e8ve\"]"));
+    }
+}
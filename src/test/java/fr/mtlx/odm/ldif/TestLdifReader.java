@@ -0,0 +1,115 @@
+package fr.mtlx.odm.ldif;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLdifReader {
+
+    private static final String LDIF = "version: 1\n"
+            + "# personnes\n"
+            + "dn: ou=personnes,dc=mtlx,dc=fr\n"
+            + "objectClass: top\n"
+            + "objectClass: organizationalUnit\n"
+            + "ou: personnes\n"
+            + "\n"
+            + "\n"
+            + "dn: cn=alex,ou=personnes,\n"
+            + " dc=mtlx,dc=fr\r\n"
+            + "objectClass: person\n"
+            + "cn: alex\n"
+            + "# comment\n"
+            + "sn:: w6lsw6h2ZQ==\n"
+            + "description: a long\n"
+            + "  description\n";
+
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = Files.createTempFile("odm", ".ldif");
+
+        Files.write(file, LDIF.getBytes(UTF_8));
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.delete(file);
+    }
+
+    private void check(final int windowSize) throws IOException, NamingException {
+        final List<LdifRecord> records;
+
+        try (LdifReader reader = new LdifReader(file, windowSize)) {
+            records = reader.records().collect(Collectors.toList());
+        }
+
+        assertThat(records, hasSize(2));
+
+        assertThat(records.get(0).getDn(), is(new LdapName("ou=personnes,dc=mtlx,dc=fr")));
+        assertThat(records.get(0).getAttributes().get("objectClass").size(), is(2));
+
+        final LdifRecord alex = records.get(1);
+
+        assertThat(alex.getDn(), is(new LdapName("cn=alex,ou=personnes,dc=mtlx,dc=fr")));
+        assertThat(alex.getLine(), is(9L));
+        assertThat(alex.getAttributes().size(), is(4));
+        assertThat(new String((byte[]) alex.getAttributes().get("sn").get(), UTF_8), is("\u00e9l\u00e8ve"));
+        assertThat(alex.getAttributes().get("description").get(), is((Object) "a long description"));
+    }
+
+    @Test
+    public void read() throws IOException, NamingException {
+        check(LdifReader.DEFAULT_WINDOW_SIZE);
+    }
+
+    @Test
+    public void readAcrossWindows() throws IOException, NamingException {
+        check(7);
+    }
+
+    @Test(expected = LdifException.class)
+    public void missingDn() throws IOException {
+        Files.write(file, "cn: alex\n".getBytes(UTF_8));
+
+        try (LdifReader reader = new LdifReader(file)) {
+            reader.next();
+        }
+    }
+}
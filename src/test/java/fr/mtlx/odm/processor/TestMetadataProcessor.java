@@ -0,0 +1,158 @@
+package fr.mtlx.odm.processor;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.naming.Name;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.LdapName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ldap.core.DirContextAdapter;
+
+import fr.mtlx.odm.Attribute;
+import fr.mtlx.odm.Entry;
+import fr.mtlx.odm.GeneratedMetadata;
+import fr.mtlx.odm.PartialClassMetadata;
+import fr.mtlx.odm.Session;
+import fr.mtlx.odm.model.Top;
+import fr.mtlx.odm.spring.MockDirectory;
+import fr.mtlx.odm.spring.SpringSessionFactoryImpl;
+
+public class TestMetadataProcessor {
+
+    @Entry(objectClasses = { "account" })
+    public static class Account extends Top {
+
+        private static final long serialVersionUID = 1L;
+
+        @Attribute(aliases = "userid")
+        private String uid;
+
+        @Attribute
+        private List<String> host;
+
+        // no setter, assigned directly
+        @Attribute
+        Integer uidNumber;
+
+        public String getUid() {
+            return uid;
+        }
+
+        public void setUid(final String uid) {
+            this.uid = uid;
+        }
+
+        public Integer getUidNumber() {
+            return uidNumber;
+        }
+
+        public List<String> getHost() {
+            return host;
+        }
+
+        public void setHost(final List<String> host) {
+            this.host = host;
+        }
+    }
+
+    private DirContext dirContext;
+
+    private SpringSessionFactoryImpl sessionFactory;
+
+    private Session session;
+
+    @Before
+    public void openSession() throws Exception {
+        dirContext = mock(DirContext.class);
+
+        sessionFactory = MockDirectory.sessionFactory(dirContext, factory -> {
+        }, Account.class);
+
+        session = sessionFactory.openSession();
+    }
+
+    @After
+    public void closeSession() throws IOException {
+        session.close();
+    }
+
+    @Test
+    public void generated() throws Exception {
+        final GeneratedMetadata<Account> generated = GeneratedMetadata.find(Account.class);
+
+        assertThat(generated, notNullValue());
+
+        assertThat(generated.getObjectClassHierarchy(), contains("top", "account"));
+
+        assertThat(generated.getIdentifierPropertyName(), equalTo("dn"));
+
+        assertThat(generated.getProperties(), hasSize(3));
+
+        assertTrue(((PartialClassMetadata<?>) sessionFactory.getClassMetadata(Account.class)).isGenerated());
+
+        assertThat(Class.forName(Account.class.getName() + "_OdmMapper"), notNullValue());
+    }
+
+    @Test
+    public void lookup() throws Exception {
+        final Name dn = new LdapName("uid=alex,ou=accounts");
+
+        final BasicAttributes attributes = new BasicAttributes(true);
+
+        final BasicAttribute objectClass = new BasicAttribute("objectClass");
+        objectClass.add("top");
+        objectClass.add("account");
+        attributes.put(objectClass);
+
+        attributes.put("userid", "alex");
+        attributes.put("uidNumber", "1000");
+
+        final BasicAttribute host = new BasicAttribute("host");
+        host.add("alpha");
+        host.add("beta");
+        attributes.put(host);
+
+        when(dirContext.lookup(dn)).thenReturn(new DirContextAdapter(attributes, dn));
+
+        final Account account = session.getOperations(Account.class).lookup(dn);
+
+        assertThat(account.getDn(), equalTo(dn));
+        assertThat(account.getUid(), equalTo("alex"));
+        assertThat(account.getHost(), contains("alpha", "beta"));
+        assertThat(account.getUidNumber(), equalTo(1000));
+    }
+}
@@ -0,0 +1,124 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.naming.Name;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.ldap.core.DirContextAdapter;
+
+/**
+ * Session factories over mocked directory contexts, and the entries the
+ * tests read from them.
+ */
+public final class MockDirectory {
+
+    private MockDirectory() {
+    }
+
+    /**
+     * @return a context source opening the context for reads and writes
+     */
+    public static ContextSource contextSource(final DirContext context) {
+        final ContextSource contextSource = mock(ContextSource.class);
+
+        when(contextSource.getReadOnlyContext()).thenReturn(context);
+        when(contextSource.getReadWriteContext()).thenReturn(context);
+
+        return contextSource;
+    }
+
+    /**
+     * @param settings applied before the factory is initialized
+     */
+    public static SpringSessionFactoryImpl sessionFactory(final DirContext context,
+            final Consumer<SpringSessionFactoryImpl> settings, final Class<?>... mappedClasses) throws Exception {
+        final SpringSessionFactoryImpl sessionFactory = new SpringSessionFactoryImpl(contextSource(context));
+
+        sessionFactory.setMappedClasses(Arrays.stream(mappedClasses).map(Class::getName).collect(Collectors.toList()));
+
+        settings.accept(sessionFactory);
+
+        sessionFactory.afterPropertiesSet();
+
+        return sessionFactory;
+    }
+
+    public static DirContextAdapter person(final Name dn) {
+        final BasicAttributes attributes = new BasicAttributes(true);
+
+        final BasicAttribute objectClass = new BasicAttribute("objectClass");
+        objectClass.add("top");
+        objectClass.add("person");
+        attributes.put(objectClass);
+
+        attributes.put("cn", "alex");
+        attributes.put("sn", "mathieu");
+
+        final BasicAttribute telephoneNumber = new BasicAttribute("telephoneNumber");
+        telephoneNumber.add("0491141300");
+        telephoneNumber.add("0491141312");
+        attributes.put(telephoneNumber);
+
+        final DirContextAdapter context = new DirContextAdapter(attributes, dn);
+
+        context.setUpdateMode(true);
+
+        return context;
+    }
+
+    public static SearchResult group(final String cn, final Name... members) throws NamingException {
+        final BasicAttributes attributes = new BasicAttributes(true);
+
+        final BasicAttribute objectClass = new BasicAttribute("objectClass");
+        objectClass.add("top");
+        objectClass.add("groupOfNames");
+        attributes.put(objectClass);
+
+        attributes.put("cn", cn);
+
+        final BasicAttribute member = new BasicAttribute("member");
+        for (Name dn : members) {
+            member.add(dn.toString());
+        }
+        attributes.put(member);
+
+        final Name dn = new LdapName("cn=" + cn + ",ou=groupes");
+
+        return new SearchResult(dn.toString(), new DirContextAdapter(attributes, dn), attributes);
+    }
+}
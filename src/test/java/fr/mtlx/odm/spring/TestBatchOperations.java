@@ -0,0 +1,187 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static fr.mtlx.odm.spring.MockDirectory.person;
+import static fr.mtlx.odm.spring.MockDirectory.sessionFactory;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.naming.Name;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.LdapName;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.ldap.support.LdapUtils;
+
+import fr.mtlx.odm.BatchResult;
+import fr.mtlx.odm.Operations;
+import fr.mtlx.odm.Session;
+import fr.mtlx.odm.model.Person;
+
+public class TestBatchOperations {
+
+    private DirContext dirContext;
+
+    private Name dn;
+
+    @Before
+    public void init() throws NamingException {
+        dirContext = mock(DirContext.class);
+
+        dn = new LdapName("cn=alex,ou=personnes");
+
+        when(dirContext.lookup(dn)).thenReturn(person(dn));
+    }
+
+    private static List<Person> transientPersons(final int count) {
+        return IntStream.range(0, count).mapToObj(i -> {
+            final Person person = new Person();
+
+            person.setDn(LdapUtils.newLdapName("cn=p" + i + ",ou=personnes"));
+            person.setCommonName("p" + i);
+            person.setSurname("p" + i);
+
+            return person;
+        }).collect(Collectors.toList());
+    }
+
+    @Test
+    public void bindAllPartialFailure() throws Exception {
+        final List<Person> persons = transientPersons(5);
+
+        doThrow(new NameAlreadyBoundException()).when(dirContext).bind(eq(persons.get(2).getDn()), any(),
+                any(Attributes.class));
+
+        try (Session batch = sessionFactory(dirContext, factory -> factory.setBatchConcurrency(2),
+                Person.class).openSession()) {
+            final BatchResult<Person> result = batch.getOperations(Person.class).bindAll(persons);
+
+            assertThat(result.isSuccess(), is(false));
+            assertThat(result.getSucceededCount(), is(4L));
+            assertThat(result.getSucceeded(), not(hasItem(persons.get(2))));
+
+            assertThat(result.getFailures(), hasSize(1));
+            assertThat(result.getFailures().get(0).getEntry(), sameInstance(persons.get(2)));
+        }
+
+        verify(dirContext, times(5)).bind(any(Name.class), any(), any(Attributes.class));
+    }
+
+    @Test
+    public void bindAllConcurrency() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        doAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+            try {
+                Thread.sleep(20);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            return null;
+        }).when(dirContext).bind(any(Name.class), any(), any(Attributes.class));
+
+        try (Session batch = sessionFactory(dirContext, factory -> factory.setBatchConcurrency(3),
+                Person.class).openSession()) {
+            final BatchResult<Person> result = batch.getOperations(Person.class).bindAll(transientPersons(20));
+
+            assertThat(result.getSucceededCount(), is(20L));
+        }
+
+        assertThat(maxInFlight.get(), allOf(greaterThan(0), lessThanOrEqualTo(3)));
+    }
+
+    @Test
+    public void bindAllWriteBehind() throws Exception {
+        final SpringSessionFactoryImpl sessionFactory = sessionFactory(dirContext, factory -> {
+            factory.setBatchConcurrency(2);
+            factory.setWriteBehind(true);
+        }, Person.class);
+
+        try (Session batch = sessionFactory.openSession()) {
+            final Operations<Person> ops = batch.getOperations(Person.class);
+
+            ops.unbind(ops.lookup(dn));
+
+            final Person replacement = new Person();
+
+            replacement.setDn(dn);
+            replacement.setCommonName("alex");
+            replacement.setSurname("dupont");
+
+            assertThat(ops.bindAll(Arrays.asList(replacement)).isSuccess(), is(true));
+        }
+
+        // the queued unbind went first
+        final InOrder order = inOrder(dirContext);
+
+        order.verify(dirContext).unbind(dn);
+        order.verify(dirContext).bind(eq(dn), any(), any(Attributes.class));
+    }
+
+    @Test
+    public void bindAllInterrupted() throws Exception {
+        try (Session batch = sessionFactory(dirContext, factory -> factory.setBatchConcurrency(2),
+                Person.class).openSession()) {
+            Thread.currentThread().interrupt();
+
+            final BatchResult<Person> result;
+            try {
+                result = batch.getOperations(Person.class).bindAll(transientPersons(5));
+            } finally {
+                // cancelled, and the interrupt is kept
+                assertThat(Thread.interrupted(), is(true));
+            }
+
+            assertThat(result.getSucceededCount(), is(0L));
+        }
+
+        verify(dirContext, never()).bind(any(Name.class), any(), any(Attributes.class));
+    }
+}
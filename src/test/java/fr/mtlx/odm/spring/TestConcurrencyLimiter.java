@@ -0,0 +1,91 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+
+import org.junit.Test;
+import org.springframework.ldap.ServiceUnavailableException;
+
+public class TestConcurrencyLimiter {
+
+    private static final long MS = 1000000;
+
+    @Test
+    public void reject() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 2, Duration.ZERO, 0);
+
+        final long start = limiter.acquire();
+        limiter.acquire();
+
+        try {
+            limiter.acquire();
+
+            fail("a third operation was admitted");
+        } catch (ServiceUnavailableException e) {
+            // expected
+        }
+
+        limiter.release(start);
+
+        limiter.acquire();
+
+        assertThat(limiter.getInFlight(), is(2));
+    }
+
+    @Test
+    public void adapt() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 100, Duration.ZERO, 0);
+
+        // steady latency under load: the limit grows
+        for (int i = 0; i < 20; i++) {
+            limiter.update(10 * MS, limiter.getLimit());
+        }
+
+        final int grown = limiter.getLimit();
+
+        assertThat(grown, greaterThan(10));
+
+        // the directory slows down: the limit shrinks
+        for (int i = 0; i < 20; i++) {
+            limiter.update(100 * MS, limiter.getLimit());
+        }
+
+        assertThat(limiter.getLimit(), lessThan(grown));
+    }
+
+    @Test
+    public void idle() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 100, Duration.ZERO, 0);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.update(10 * MS, 1);
+        }
+
+        assertThat(limiter.getLimit(), is(10));
+    }
+}
@@ -0,0 +1,173 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.AdditionalMatchers.geq;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ldap.core.ContextSource;
+
+public class TestContextSourceRouter {
+
+    private ContextSource primary;
+
+    private ContextSource replica1;
+
+    private ContextSource replica2;
+
+    private static ContextSource contextSource() {
+        final ContextSource contextSource = mock(ContextSource.class);
+
+        when(contextSource.getReadOnlyContext()).thenReturn(mock(DirContext.class));
+        when(contextSource.getReadWriteContext()).thenReturn(mock(DirContext.class));
+
+        return contextSource;
+    }
+
+    @Before
+    public void init() {
+        primary = contextSource();
+        replica1 = contextSource();
+        replica2 = contextSource();
+    }
+
+    @Test
+    public void roundRobin() {
+        final ContextSourceRouter router = new ContextSourceRouter(primary, Arrays.asList(replica1, replica2),
+                ContextSourceRouter.Strategy.ROUND_ROBIN);
+
+        for (int i = 0; i < 4; i++) {
+            router.getReadOnlyContext();
+        }
+
+        router.getReadWriteContext();
+
+        verify(replica1, times(2)).getReadOnlyContext();
+        verify(replica2, times(2)).getReadOnlyContext();
+        verify(primary, times(0)).getReadOnlyContext();
+        verify(primary).getReadWriteContext();
+    }
+
+    @Test
+    public void leastOutstanding() throws NamingException {
+        final ContextSourceRouter router = new ContextSourceRouter(primary, Arrays.asList(replica1, replica2),
+                ContextSourceRouter.Strategy.LEAST_OUTSTANDING);
+
+        // replica1 then replica2, both left open
+        router.getReadOnlyContext();
+        final DirContext context = router.getReadOnlyContext();
+
+        context.close();
+        context.close();
+
+        // replica2 has no open context, then both have one and the tie goes to the next in turn
+        router.getReadOnlyContext();
+        router.getReadOnlyContext();
+
+        verify(replica1, times(1)).getReadOnlyContext();
+        verify(replica2, times(3)).getReadOnlyContext();
+
+        assertThat(router.selectReplica().getOutstanding(), is(1));
+    }
+
+    @Test
+    public void readYourWrites() {
+        final ContextSource session = new ContextSourceRouter(primary, Arrays.asList(replica1),
+                ContextSourceRouter.Strategy.ROUND_ROBIN).sticky();
+
+        session.getReadOnlyContext();
+        session.getReadWriteContext();
+        session.getReadOnlyContext();
+
+        verify(replica1).getReadOnlyContext();
+        verify(primary).getReadOnlyContext();
+    }
+
+    @Test
+    public void hedge() throws NamingException, InterruptedException {
+        final DirContext slow = mock(DirContext.class);
+        final DirContext fast = mock(DirContext.class);
+
+        when(slow.getNameInNamespace()).thenReturn("replica1");
+        when(fast.getNameInNamespace()).thenReturn("replica2");
+        when(replica1.getReadOnlyContext()).thenReturn(slow);
+        when(replica2.getReadOnlyContext()).thenReturn(fast);
+
+        final ContextSourceRouter router = new ContextSourceRouter(primary, Arrays.asList(replica1, replica2),
+                ContextSourceRouter.Strategy.ROUND_ROBIN);
+
+        final HedgingPolicy policy = spy(new HedgingPolicy(0.9, Duration.ofMillis(10), Duration.ofMillis(10)));
+
+        final CountDownLatch unblock = new CountDownLatch(1);
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+
+        try {
+            final String answer = router.hedge(template -> template.executeReadOnly(context -> {
+                final String name = context.getNameInNamespace();
+
+                if (name.equals("replica1")) {
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                return name;
+            }), policy, executor);
+
+            assertThat(answer, is("replica2"));
+        } finally {
+            unblock.countDown();
+
+            executor.shutdown();
+        }
+
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+
+        // the slow replica only, not the hedge which answered
+        verify(policy).record(anyLong());
+        verify(policy).record(geq(TimeUnit.MILLISECONDS.toNanos(10)));
+    }
+}
@@ -0,0 +1,189 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static fr.mtlx.odm.spring.MockDirectory.contextSource;
+import static fr.mtlx.odm.spring.MockDirectory.sessionFactory;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.junit.Test;
+
+import fr.mtlx.odm.CountStrategy;
+import fr.mtlx.odm.Operations;
+import fr.mtlx.odm.Session;
+import fr.mtlx.odm.model.Person;
+
+public class TestCountStrategy {
+
+    @SuppressWarnings("unchecked")
+    private static NamingEnumeration<SearchResult> results(final int count) throws NamingException {
+        final NamingEnumeration<SearchResult> results = mock(NamingEnumeration.class);
+
+        final AtomicInteger remaining = new AtomicInteger(count);
+
+        when(results.hasMore()).thenAnswer(invocation -> remaining.get() > 0);
+        when(results.next()).thenAnswer(invocation -> {
+            remaining.decrementAndGet();
+
+            return new SearchResult("cn=alex,ou=personnes", null, new BasicAttributes(true));
+        });
+
+        return results;
+    }
+
+    private static Control[] virtualListViewResponse(final int contentCount) {
+        final byte[] value = Ber.element(Ber.SEQUENCE, Ber.integer(1), Ber.integer(contentCount),
+                new byte[]{Ber.ENUMERATED, 0x01, 0x00});
+
+        return new Control[]{new BasicControl(VirtualListViewDirContextProcessor.RESPONSE_OID, false, value)};
+    }
+
+    private static Control[] pagedResultsResponse(final byte... cookie) throws IOException {
+        final byte[] value = Ber.element(Ber.SEQUENCE, Ber.integer(0), Ber.element(Ber.OCTET_STRING, cookie));
+
+        return new Control[]{new PagedResultsResponseControl(PagedResultsResponseControl.OID, false, value)};
+    }
+
+    @Test
+    public void countVirtualListView() throws Exception {
+        final LdapContext context = mock(LdapContext.class);
+
+        final NamingEnumeration<SearchResult> results = results(1);
+
+        when(context.search(any(Name.class), any(String.class), any(SearchControls.class))).thenReturn(results);
+        when(context.getResponseControls()).thenReturn(virtualListViewResponse(500));
+
+        try (Session count = sessionFactory(context, factory -> {
+        }, Person.class).openSession()) {
+            assertThat(count.getOperations(Person.class).search(new LdapName("ou=personnes"))
+                    .orderBy("surname", true).countStrategy(CountStrategy.VLV).count(), is(500L));
+        }
+
+        verify(context).search(any(Name.class), any(String.class), any(SearchControls.class));
+    }
+
+    @Test
+    public void countAutoFallback() throws Exception {
+        final LdapContext primary = mock(LdapContext.class);
+
+        // no virtual list view response
+        final LdapContext first = mock(LdapContext.class);
+
+        when(first.search(any(Name.class), any(String.class), any(SearchControls.class)))
+                .thenAnswer(invocation -> results(3));
+
+        final LdapContext second = mock(LdapContext.class);
+
+        when(second.search(any(Name.class), any(String.class), any(SearchControls.class)))
+                .thenAnswer(invocation -> results(1));
+        when(second.getResponseControls()).thenReturn(virtualListViewResponse(500));
+
+        try (Session count = sessionFactory(primary, factory -> factory.setReadReplicas(Arrays.asList(
+                contextSource(first), contextSource(second))), Person.class).openSession()) {
+            final Operations<Person> ops = count.getOperations(Person.class);
+
+            final Name base = new LdapName("ou=personnes");
+
+            // the replicas in turn
+            assertThat(ops.search(base).orderBy("surname", true).count(), is(3L));
+            assertThat(ops.search(base).orderBy("surname", true).count(), is(500L));
+            assertThat(ops.search(base).orderBy("surname", true).count(), is(3L));
+        }
+
+        // a virtual list view, then two paged scans
+        verify(first, times(3)).search(any(Name.class), any(String.class), any(SearchControls.class));
+
+        // the other replica still answers with a virtual list view
+        verify(second).search(any(Name.class), any(String.class), any(SearchControls.class));
+
+        verify(primary, never()).search(any(Name.class), any(String.class), any(SearchControls.class));
+    }
+
+    @Test
+    public void countSubordinates() throws Exception {
+        final LdapContext context = mock(LdapContext.class);
+
+        final Name base = new LdapName("ou=personnes");
+
+        when(context.getAttributes(eq(base), any(String[].class))).thenReturn(
+                new BasicAttributes("numSubordinates", "42", true));
+
+        try (Session count = sessionFactory(context, factory -> {
+        }, Person.class).openSession()) {
+            assertThat(count.getOperations(Person.class).search(base).scope(SearchControls.ONELEVEL_SCOPE)
+                    .countStrategy(CountStrategy.SUBORDINATES).count(), is(42L));
+        }
+
+        verify(context, never()).search(any(Name.class), any(String.class), any(SearchControls.class));
+    }
+
+    @Test
+    public void countPagedScan() throws Exception {
+        final LdapContext context = mock(LdapContext.class);
+
+        final NamingEnumeration<SearchResult> first = results(2);
+        final NamingEnumeration<SearchResult> second = results(2);
+        final NamingEnumeration<SearchResult> last = results(1);
+
+        when(context.search(any(Name.class), any(String.class), any(SearchControls.class))).thenReturn(first, second,
+                last);
+
+        // the last page has an empty cookie
+        when(context.getResponseControls()).thenReturn(pagedResultsResponse((byte) 1), pagedResultsResponse(
+                (byte) 2), pagedResultsResponse());
+
+        try (Session count = sessionFactory(context, factory -> factory.setCountPageSize(2), Person.class)
+                .openSession()) {
+            assertThat(count.getOperations(Person.class).search(new LdapName("ou=personnes"))
+                    .countStrategy(CountStrategy.PAGED_SCAN).count(), is(5L));
+        }
+
+        // pages of countPageSize entries
+        verify(context, times(3)).search(any(Name.class), any(String.class), any(SearchControls.class));
+    }
+}
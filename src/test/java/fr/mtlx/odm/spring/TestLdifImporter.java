@@ -0,0 +1,208 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.naming.Name;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.LdapName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.ldap.core.DirContextOperations;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import fr.mtlx.odm.Attribute;
+import fr.mtlx.odm.BatchResult;
+import fr.mtlx.odm.Entry;
+import fr.mtlx.odm.ldif.LdifRecord;
+import fr.mtlx.odm.model.Person;
+import fr.mtlx.odm.model.Top;
+
+public class TestLdifImporter {
+
+    @Entry(objectClasses = { "device" }, ignoreNonMatched = true)
+    public static class Device extends Top {
+
+        private static final long serialVersionUID = 1L;
+
+        @Attribute
+        private String cn;
+
+        public String getCn() {
+            return cn;
+        }
+
+        public void setCn(String cn) {
+            this.cn = cn;
+        }
+    }
+
+    private static final String LDIF = "version: 1\n"
+            + "dn: cn=parent,dc=test\n"
+            + "objectClass: person\n"
+            + "cn: parent\n"
+            + "sn: parent\n"
+            + "\n"
+            + "dn: cn=child,cn=parent,dc=test\n"
+            + "objectClass: person\n"
+            + "cn: child\n"
+            + "sn: child\n"
+            + "\n"
+            + "dn: cn=parent,dc=test\n"
+            + "objectClass: person\n"
+            + "cn: parent\n"
+            + "sn: duplicate\n"
+            + "\n"
+            + "dn: cn=other,dc=test\n"
+            + "objectClass: person\n"
+            + "cn: other\n"
+            + "sn: other\n"
+            + "mail: other@test\n";
+
+    private Path file;
+
+    private LdifImporter importer;
+
+    // in bind order
+    private final List<Name> bound = new CopyOnWriteArrayList<>();
+
+    private final Map<Name, DirContextOperations> contexts = Maps.newConcurrentMap();
+
+    @Before
+    public void init() throws Exception {
+        file = Files.createTempFile("odm", ".ldif");
+
+        Files.write(file, LDIF.getBytes(UTF_8));
+
+        final ContextSource contextSource = mock(ContextSource.class);
+
+        final DirContext dirContext = mock(DirContext.class);
+
+        when(contextSource.getReadOnlyContext()).thenReturn(dirContext);
+        when(contextSource.getReadWriteContext()).thenReturn(dirContext);
+
+        final Set<Name> existing = Sets.newConcurrentHashSet();
+
+        doAnswer(invocation -> {
+            final Name dn = (Name) invocation.getArguments()[0];
+
+            if (dn.size() == 2) {
+                // a slow parent, its children would otherwise be bound first
+                Thread.sleep(200);
+            }
+
+            if (!existing.add(dn)) {
+                throw new NameAlreadyBoundException(dn.toString());
+            }
+
+            bound.add(dn);
+
+            contexts.put(dn, (DirContextOperations) invocation.getArguments()[1]);
+
+            return null;
+        }).when(dirContext).bind(any(Name.class), any(), any(Attributes.class));
+
+        final SpringSessionFactoryImpl sessionFactory = new SpringSessionFactoryImpl(contextSource);
+
+        sessionFactory.setMappedClasses(Arrays.asList(Person.class.getName(), Device.class.getName()));
+
+        sessionFactory.setBatchConcurrency(4);
+
+        sessionFactory.afterPropertiesSet();
+
+        importer = new LdifImporter(sessionFactory);
+    }
+
+    @After
+    public void deleteFile() throws IOException {
+        Files.delete(file);
+    }
+
+    @Test
+    public void importLdif() throws Exception {
+        final BatchResult<LdifRecord> result = importer.importLdif(file);
+
+        assertThat(result.getSucceededCount(), is(3L));
+
+        // counted, not kept
+        assertThat(result.getSucceeded(), empty());
+
+        assertThat(result.getFailures(), hasSize(1));
+
+        assertThat(result.getFailures().get(0).getEntry().getDn(), equalTo((Name) new LdapName("cn=parent,dc=test")));
+
+        assertThat(bound, hasItems(new LdapName("cn=parent,dc=test"), new LdapName("cn=child,cn=parent,dc=test"),
+                new LdapName("cn=other,dc=test")));
+
+        // the child waited for its parent
+        assertThat(bound.indexOf(new LdapName("cn=child,cn=parent,dc=test")),
+                greaterThan(bound.indexOf(new LdapName("cn=parent,dc=test"))));
+
+        assertThat(Collections.frequency(bound, new LdapName("cn=parent,dc=test")), is(1));
+
+        // not mapped by Person, written anyway
+        assertThat(contexts.get(new LdapName("cn=other,dc=test")).getStringAttribute("mail"), is("other@test"));
+    }
+
+    @Test
+    public void strictClass() throws Exception {
+        Files.write(file, ("version: 1\n"
+                + "dn: cn=printer,dc=test\n"
+                + "objectClass: device\n"
+                + "cn: printer\n"
+                + "serialNumber: 42\n").getBytes(UTF_8));
+
+        final BatchResult<LdifRecord> result = importer.importLdif(file);
+
+        // rejected rather than bound without its serial number
+        assertThat(result.getFailures(), hasSize(1));
+        assertThat(result.getFailures().get(0).getCause().getMessage(), containsString("serialNumber"));
+
+        assertThat(bound, empty());
+    }
+}
@@ -0,0 +1,91 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static fr.mtlx.odm.spring.MockDirectory.group;
+import static fr.mtlx.odm.spring.MockDirectory.person;
+import static fr.mtlx.odm.spring.MockDirectory.sessionFactory;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+
+import org.junit.Test;
+
+import fr.mtlx.odm.Session;
+import fr.mtlx.odm.model.GroupOfPersons;
+import fr.mtlx.odm.model.Person;
+
+public class TestLimitedContextSource {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void streamUnderLimit() throws Exception {
+        final DirContext dirContext = mock(DirContext.class);
+
+        final Name dn = new LdapName("cn=alex,ou=personnes");
+
+        when(dirContext.lookup(dn)).thenReturn(person(dn));
+
+        final SpringSessionFactoryImpl sessionFactory = sessionFactory(dirContext, factory -> {
+            factory.setMaxConcurrency(1);
+            factory.setAdmissionTimeout(Duration.ofMillis(100));
+        }, Person.class, GroupOfPersons.class);
+
+        final NamingEnumeration<SearchResult> groups = mock(NamingEnumeration.class);
+
+        when(groups.hasMore()).thenReturn(true, true, false);
+        when(groups.next()).thenReturn(group("admins", dn), group("users", dn));
+
+        when(dirContext.search(eq(new LdapName("ou=groupes")), any(String.class), any(SearchControls.class)))
+                .thenReturn(groups);
+
+        final NamingEnumeration<SearchResult> persons = mock(NamingEnumeration.class);
+
+        when(persons.hasMore()).thenReturn(true, false);
+        when(persons.next()).thenReturn(new SearchResult(dn.toString(), person(dn), person(dn).getAttributes()));
+
+        when(dirContext.search(eq(new LdapName("ou=personnes")), any(String.class), any(SearchControls.class)))
+                .thenReturn(persons);
+
+        try (Session limited = sessionFactory.openSession();
+                Stream<GroupOfPersons> entries = limited.getOperations(GroupOfPersons.class)
+                        .search(new LdapName("ou=groupes")).stream()) {
+            // the members are read while the search is still open
+            entries.forEach(group -> assertThat(group.getMembers().get(0).getSurname(), is("mathieu")));
+        }
+    }
+}
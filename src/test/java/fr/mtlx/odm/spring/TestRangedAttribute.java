@@ -0,0 +1,196 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static fr.mtlx.odm.spring.MockDirectory.sessionFactory;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ldap.core.DirContextAdapter;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+import fr.mtlx.odm.Session;
+import fr.mtlx.odm.model.Person;
+
+public class TestRangedAttribute {
+
+    private DirContext dirContext;
+
+    private Session session;
+
+    @Before
+    public void openSession() throws Exception {
+        dirContext = mock(DirContext.class);
+
+        session = sessionFactory(dirContext, factory -> {
+        }, Person.class).openSession();
+    }
+
+    @After
+    public void closeSession() throws IOException {
+        session.close();
+    }
+
+    private static DirContextAdapter rangedContext(final Name dn) {
+        final BasicAttributes attributes = new BasicAttributes(true);
+
+        final BasicAttribute objectClass = new BasicAttribute("objectClass");
+        objectClass.add("top");
+        objectClass.add("person");
+        attributes.put(objectClass);
+
+        attributes.put("cn", "bob");
+
+        final BasicAttribute first = new BasicAttribute("telephoneNumber;range=0-1");
+        first.add("0491141300");
+        first.add("0491141312");
+        attributes.put(first);
+
+        return new DirContextAdapter(attributes, dn);
+    }
+
+    /**
+     * every read of the entry returns the first range only
+     */
+    private void stubRanges(final Name other) throws NamingException {
+        when(dirContext.lookup(other)).thenAnswer(invocation -> rangedContext(other));
+
+        final BasicAttributes last = new BasicAttributes(true);
+        last.put("telephoneNumber;range=2-*", "0491141399");
+
+        when(dirContext.getAttributes(eq(other), eq(new String[] { "telephoneNumber;range=2-*" }))).thenReturn(last);
+    }
+
+    private Person rangedPerson(final Name other) throws NamingException {
+        stubRanges(other);
+
+        return session.getOperations(Person.class).lookup(other);
+    }
+
+    /**
+     * only the new value, not every value read by ranges
+     */
+    private void assertAddedTelephoneNumber(final Name other) throws NamingException {
+        final ArgumentCaptor<ModificationItem[]> captor = ArgumentCaptor.forClass(ModificationItem[].class);
+
+        verify(dirContext).modifyAttributes(eq(other), captor.capture());
+
+        final ModificationItem[] modifications = captor.getValue();
+
+        assertThat(modifications.length, is(1));
+
+        assertThat(modifications[0].getModificationOp(), is(DirContext.ADD_ATTRIBUTE));
+
+        assertThat(modifications[0].getAttribute().getID(), equalToIgnoringCase("telephoneNumber"));
+
+        assertThat(modifications[0].getAttribute().size(), is(1));
+
+        assertThat(modifications[0].getAttribute().get(), is((Object) "0491141400"));
+    }
+
+    @Test
+    public void rangedAttribute() throws NamingException {
+        final Person person = rangedPerson(new LdapName("cn=bob,ou=personnes"));
+
+        assertThat(person.getTelephoneNumber(), contains("0491141300", "0491141312", "0491141399"));
+    }
+
+    @Test
+    public void modifyRangedAttribute() throws NamingException {
+        final Name other = new LdapName("cn=bob,ou=personnes");
+
+        final Person person = rangedPerson(other);
+
+        person.getTelephoneNumber().add("0491141400");
+
+        session.getOperations(Person.class).modify(person);
+
+        assertAddedTelephoneNumber(other);
+    }
+
+    @Test
+    public void modifyUnreadRangedAttribute() throws NamingException {
+        final Name other = new LdapName("cn=bob,ou=personnes");
+
+        final Person person = rangedPerson(other);
+
+        // assigned, never read
+        person.setTelephoneNumber(Lists.newArrayList("0491141300", "0491141312", "0491141399", "0491141400"));
+
+        session.getOperations(Person.class).modify(person);
+
+        assertAddedTelephoneNumber(other);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void modifyEagerRangedAttribute() throws NamingException {
+        final Name other = new LdapName("cn=bob,ou=personnes");
+
+        stubRanges(other);
+
+        final DirContextAdapter context = rangedContext(other);
+
+        final NamingEnumeration<SearchResult> results = mock(NamingEnumeration.class);
+
+        when(results.hasMore()).thenReturn(true, false);
+        when(results.next()).thenReturn(new SearchResult(other.toString(), context, context.getAttributes()));
+
+        when(dirContext.search(eq(other), any(String.class), any(SearchControls.class))).thenReturn(results);
+
+        // the context is not kept, it is read again for the update
+        final Person person = Iterables.getOnlyElement(session.getOperations(Person.class).search(other).eager()
+                .list());
+
+        person.getTelephoneNumber().add("0491141400");
+
+        session.getOperations(Person.class).modify(person);
+
+        assertAddedTelephoneNumber(other);
+    }
+}
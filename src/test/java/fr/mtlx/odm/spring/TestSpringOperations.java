@@ -0,0 +1,512 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static fr.mtlx.odm.spring.MockDirectory.group;
+import static fr.mtlx.odm.spring.MockDirectory.person;
+import static fr.mtlx.odm.spring.MockDirectory.sessionFactory;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ldap.core.DirContextAdapter;
+
+import com.google.common.collect.Iterables;
+
+import fr.mtlx.odm.Attribute;
+import fr.mtlx.odm.Entry;
+import fr.mtlx.odm.Session;
+import fr.mtlx.odm.collections.LazyReferenceList;
+import fr.mtlx.odm.collections.LazyReferenceSet;
+import fr.mtlx.odm.collections.ReferenceCollection;
+import fr.mtlx.odm.model.GroupOfPersons;
+import fr.mtlx.odm.model.InetOrgPerson;
+import fr.mtlx.odm.model.Person;
+import fr.mtlx.odm.model.Top;
+
+public class TestSpringOperations {
+
+    @Entry(objectClasses = { "employee" }, eager = true)
+    public static class Employee extends Top {
+
+        private static final long serialVersionUID = 1L;
+
+        @Attribute
+        private String cn;
+
+        @Attribute
+        private Employee manager;
+
+        public String getCn() {
+            return cn;
+        }
+
+        public void setCn(final String cn) {
+            this.cn = cn;
+        }
+
+        public Employee getManager() {
+            return manager;
+        }
+
+        public void setManager(final Employee manager) {
+            this.manager = manager;
+        }
+    }
+
+    private DirContext dirContext;
+
+    private Session session;
+
+    private Name dn;
+
+    @Before
+    public void openSession() throws Exception {
+        dirContext = mock(DirContext.class);
+
+        dn = new LdapName("cn=alex,ou=personnes");
+
+        when(dirContext.lookup(dn)).thenReturn(person(dn));
+
+        session = sessionFactory(dirContext, factory -> {
+        }, Person.class, InetOrgPerson.class, GroupOfPersons.class).openSession();
+    }
+
+    @After
+    public void closeSession() throws IOException {
+        session.close();
+    }
+
+    private ModificationItem[] sentModifications() throws NamingException {
+        final ArgumentCaptor<ModificationItem[]> modifications = ArgumentCaptor.forClass(ModificationItem[].class);
+
+        verify(dirContext).modifyAttributes(eq(dn), modifications.capture());
+
+        return modifications.getValue();
+    }
+
+    @Test
+    public void modifyUnchanged() throws NamingException {
+        final Person entry = session.getOperations(Person.class).lookup(dn);
+
+        session.getOperations(Person.class).modify(entry);
+
+        verify(dirContext, never()).modifyAttributes(any(Name.class), any(ModificationItem[].class));
+    }
+
+    @Test
+    public void modifySingleValue() throws NamingException {
+        final Person entry = session.getOperations(Person.class).lookup(dn);
+
+        assertThat(entry.getSurname(), is("mathieu"));
+
+        entry.setSurname("bird");
+
+        session.getOperations(Person.class).modify(entry);
+
+        final ModificationItem[] modifications = sentModifications();
+
+        assertThat(modifications.length, is(1));
+
+        assertThat(modifications[0].getModificationOp(), is(DirContext.REPLACE_ATTRIBUTE));
+
+        assertThat(modifications[0].getAttribute().getID(), equalToIgnoringCase("sn"));
+    }
+
+    @Test
+    public void modifySubclass() throws NamingException {
+        final DirContextAdapter inetOrgPerson = person(dn);
+
+        inetOrgPerson.setUpdateMode(false);
+        inetOrgPerson.addAttributeValue("objectClass", "organizationalPerson");
+        inetOrgPerson.addAttributeValue("objectClass", "inetOrgPerson");
+        inetOrgPerson.setUpdateMode(true);
+
+        when(dirContext.lookup(dn)).thenReturn(inetOrgPerson);
+
+        // through the operations of the superclass, whose slots differ
+        final Person entry = session.getOperations(Person.class).lookup(dn);
+
+        assertThat(entry, instanceOf(InetOrgPerson.class));
+
+        entry.setSurname("dupont");
+
+        session.getOperations(Person.class).modify(entry);
+
+        final ModificationItem[] modifications = sentModifications();
+
+        assertThat(modifications.length, is(1));
+
+        assertThat(modifications[0].getAttribute().getID(), equalToIgnoringCase("sn"));
+        assertThat(modifications[0].getAttribute().get(), is((Object) "dupont"));
+    }
+
+    @Test
+    public void modifyWithoutReading() throws NamingException {
+        final Person entry = session.getOperations(Person.class).lookup(dn);
+
+        entry.setSurname("bird");
+
+        session.getOperations(Person.class).modify(entry);
+
+        final ModificationItem[] modifications = sentModifications();
+
+        assertThat(modifications.length, is(1));
+
+        assertThat(modifications[0].getAttribute().get(), is((Object) "bird"));
+
+        assertThat(entry.getSurname(), is("bird"));
+
+        // written, hence clean
+        session.getOperations(Person.class).modify(entry);
+
+        verify(dirContext).modifyAttributes(any(Name.class), any(ModificationItem[].class));
+    }
+
+    @Test
+    public void modifyMultipleValues() throws NamingException {
+        final Person entry = session.getOperations(Person.class).lookup(dn);
+
+        assertThat(entry.getTelephoneNumber(), hasSize(2));
+
+        entry.setTelephoneNumber(Arrays.asList("0491141312", "0491141313"));
+
+        session.getOperations(Person.class).modify(entry);
+
+        final ModificationItem[] modifications = sentModifications();
+
+        assertThat(modifications.length, is(2));
+
+        for (ModificationItem modification : modifications) {
+            assertThat(modification.getAttribute().size(), is(1));
+
+            if (modification.getModificationOp() == DirContext.REMOVE_ATTRIBUTE) {
+                assertThat(modification.getAttribute().get(), is((Object) "0491141300"));
+            } else {
+                assertThat(modification.getModificationOp(), is(DirContext.ADD_ATTRIBUTE));
+                assertThat(modification.getAttribute().get(), is((Object) "0491141313"));
+            }
+        }
+    }
+
+    @Test
+    public void generatedMapper() throws NamingException {
+        final EntryMapper<Person> mapper = EntryMapperGenerator.generate(session.getSessionFactory()
+                .getClassMetadata(Person.class));
+
+        assertThat(mapper.getClass(), not(equalTo((Object) EntryMapper.class)));
+
+        final Person entry = new Person();
+
+        mapper.loadAll(entry, person(dn).getAttributes(), session);
+
+        assertThat(entry.getCommonName(), is("alex"));
+        assertThat(entry.getSurname(), is("mathieu"));
+        assertThat(entry.getTelephoneNumber(), contains("0491141300", "0491141312"));
+        assertThat(entry.getSeeAlso(), nullValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void eagerSearch() throws NamingException {
+        final NamingEnumeration<SearchResult> results = mock(NamingEnumeration.class);
+
+        when(results.hasMore()).thenReturn(true, false);
+        when(results.next()).thenReturn(new SearchResult(dn.toString(), person(dn), person(dn).getAttributes()));
+
+        when(dirContext.search(any(Name.class), any(String.class), any(SearchControls.class))).thenReturn(results);
+
+        final Person entry = Iterables.getOnlyElement(session.getOperations(Person.class).search(dn).eager().list());
+
+        assertThat(SpringProxyFactory.getHandler(entry).isPresent(), is(false));
+        assertThat(entry.getSurname(), is("mathieu"));
+
+        // the context was not kept, it is looked up again
+        entry.setSurname("dupont");
+
+        session.getOperations(Person.class).modify(entry);
+
+        verify(dirContext).lookup(dn);
+
+        final ModificationItem[] modifications = sentModifications();
+
+        assertThat(modifications.length, is(1));
+        assertThat(modifications[0].getAttribute().get(), is((Object) "dupont"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lookupAll() throws NamingException {
+        final Name other = new LdapName("cn=bob,ou=personnes");
+
+        final NamingEnumeration<SearchResult> results = mock(NamingEnumeration.class);
+
+        when(results.hasMore()).thenReturn(true, true, false);
+        when(results.next()).thenReturn(new SearchResult(other.toString(), person(other), person(other).getAttributes()),
+                new SearchResult(dn.toString(), person(dn), person(dn).getAttributes()));
+
+        final ArgumentCaptor<String> filter = ArgumentCaptor.forClass(String.class);
+
+        when(dirContext.search(eq(new LdapName("ou=personnes")), filter.capture(), any(SearchControls.class)))
+                .thenReturn(results);
+
+        final Map<Name, Person> entries = session.getOperations(Person.class).lookupAll(Arrays.asList(dn, other));
+
+        assertThat(entries.keySet(), contains(dn, other));
+        assertThat(filter.getValue(), is("(|(cn=alex)(cn=bob))"));
+
+        verify(dirContext, never()).lookup(any(Name.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lazyReferences() throws NamingException {
+        final LdapName other = new LdapName("cn=bob,ou=personnes");
+
+        final NamingEnumeration<SearchResult> results = mock(NamingEnumeration.class);
+
+        when(results.hasMore()).thenReturn(true, true, false);
+        when(results.next()).thenReturn(new SearchResult(dn.toString(), person(dn), person(dn).getAttributes()),
+                new SearchResult(other.toString(), person(other), person(other).getAttributes()));
+
+        when(dirContext.search(eq(new LdapName("ou=personnes")), any(String.class), any(SearchControls.class)))
+                .thenReturn(results);
+
+        final List<Person> persons = new LazyReferenceList<>(Person.class, Arrays.asList((LdapName) dn, other),
+                session, 100);
+
+        assertThat(persons.size(), is(2));
+        assertThat(((ReferenceCollection<Person>) persons).containsDn(other), is(true));
+
+        verify(dirContext, never()).search(any(Name.class), any(String.class), any(SearchControls.class));
+
+        assertThat(persons.get(0).getSurname(), is("mathieu"));
+        assertThat(persons.get(1).getSurname(), is("mathieu"));
+
+        // both entries were read by the first access
+        verify(dirContext).search(any(Name.class), any(String.class), any(SearchControls.class));
+    }
+
+    private static DirContextAdapter employee(final Name dn, final Name manager) {
+        final BasicAttributes attributes = new BasicAttributes(true);
+
+        final BasicAttribute objectClass = new BasicAttribute("objectClass");
+        objectClass.add("top");
+        objectClass.add("employee");
+        attributes.put(objectClass);
+
+        attributes.put("cn", dn.get(dn.size() - 1).substring(3));
+        attributes.put("manager", manager.toString());
+
+        return new DirContextAdapter(attributes, dn);
+    }
+
+    @Test
+    public void eagerCycle() throws Exception {
+        final SpringSessionFactoryImpl sessionFactory = sessionFactory(dirContext, factory -> {
+        }, Employee.class);
+
+        final Name alice = new LdapName("cn=alice,ou=personnes");
+        final Name bob = new LdapName("cn=bob,ou=personnes");
+
+        // each one manages the other
+        when(dirContext.lookup(alice)).thenReturn(employee(alice, bob));
+        when(dirContext.lookup(bob)).thenReturn(employee(bob, alice));
+
+        try (Session eager = sessionFactory.openSession()) {
+            final Employee employee = eager.getOperations(Employee.class).lookup(alice);
+
+            assertThat(employee.getManager().getCn(), is("bob"));
+            assertThat(employee.getManager().getManager(), sameInstance(employee));
+        }
+
+        verify(dirContext).lookup(alice);
+        verify(dirContext).lookup(bob);
+    }
+
+    @Test
+    public void lazyReferenceEdits() throws NamingException {
+        final LdapName other = new LdapName("cn=bob,ou=personnes");
+
+        // never read, it would not be found
+        final LdapName dangling = new LdapName("cn=gone,ou=personnes");
+
+        final List<Person> persons = new LazyReferenceList<>(Person.class, Arrays.asList(dangling, (LdapName) dn,
+                other), session, 100);
+
+        assertThat(persons.remove(other), is(true));
+        assertThat(persons.removeAll(Arrays.asList(dangling)), is(true));
+
+        final Person replacement = new Person();
+        replacement.setDn(other);
+
+        assertThat(persons.set(0, replacement), nullValue());
+
+        assertThat(((ReferenceCollection<Person>) persons).getDns(), contains(other));
+
+        final Set<Person> set = new LazyReferenceSet<>(Person.class, Arrays.asList(dangling, (LdapName) dn, other),
+                session, 100);
+
+        assertThat(set.retainAll(Arrays.asList(dn, other)), is(true));
+        assertThat(set.removeAll(Arrays.asList(other)), is(true));
+
+        assertThat(((ReferenceCollection<Person>) set).getDns(), contains((LdapName) dn));
+
+        verify(dirContext, never()).search(any(Name.class), any(String.class), any(SearchControls.class));
+        verify(dirContext, never()).lookup(any(Name.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void fetch() throws NamingException {
+        final Name other = new LdapName("cn=bob,ou=personnes");
+
+        final NamingEnumeration<SearchResult> groups = mock(NamingEnumeration.class);
+
+        when(groups.hasMore()).thenReturn(true, true, false);
+        when(groups.next()).thenReturn(group("admins", dn, other), group("users", other));
+
+        when(dirContext.search(eq(new LdapName("ou=groupes")), any(String.class), any(SearchControls.class)))
+                .thenReturn(groups);
+
+        final NamingEnumeration<SearchResult> persons = mock(NamingEnumeration.class);
+
+        when(persons.hasMore()).thenReturn(true, true, false);
+        when(persons.next()).thenReturn(new SearchResult(dn.toString(), person(dn), person(dn).getAttributes()),
+                new SearchResult(other.toString(), person(other), person(other).getAttributes()));
+
+        final ArgumentCaptor<String> filter = ArgumentCaptor.forClass(String.class);
+
+        when(dirContext.search(eq(new LdapName("ou=personnes")), filter.capture(), any(SearchControls.class)))
+                .thenReturn(persons);
+
+        final List<GroupOfPersons> results = session.getOperations(GroupOfPersons.class)
+                .search(new LdapName("ou=groupes")).fetch("members").list();
+
+        // the members of every group, once
+        assertThat(filter.getValue(), is("(|(cn=alex)(cn=bob))"));
+
+        assertThat(results.get(0).getMembers(), hasSize(2));
+        assertThat(results.get(1).getMembers().get(0).getSurname(), is("mathieu"));
+
+        verify(dirContext).search(eq(new LdapName("ou=personnes")), any(String.class), any(SearchControls.class));
+        verify(dirContext, never()).lookup(any(Name.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void fetchOnMiss() throws NamingException {
+        final Name other = new LdapName("cn=bob,ou=personnes");
+
+        final NamingEnumeration<SearchResult> narrowed = mock(NamingEnumeration.class);
+
+        when(narrowed.hasMore()).thenReturn(true, true, false);
+        when(narrowed.next()).thenReturn(narrowed(dn), narrowed(other));
+
+        final NamingEnumeration<SearchResult> missing = mock(NamingEnumeration.class);
+
+        when(missing.hasMore()).thenReturn(true, true, false);
+        when(missing.next()).thenReturn(new SearchResult(dn.toString(), person(dn), person(dn).getAttributes()),
+                new SearchResult(other.toString(), person(other), person(other).getAttributes()));
+
+        final ArgumentCaptor<String> filter = ArgumentCaptor.forClass(String.class);
+
+        when(dirContext.search(eq(new LdapName("ou=personnes")), filter.capture(), any(SearchControls.class)))
+                .thenReturn(narrowed, missing);
+
+        final List<Person> persons = session.getOperations(Person.class).search(new LdapName("ou=personnes"))
+                .properties("commonName").list();
+
+        assertThat(persons.get(0).getCommonName(), is("alex"));
+
+        verify(dirContext).search(any(Name.class), any(String.class), any(SearchControls.class));
+
+        // the missing attributes of both entries
+        assertThat(persons.get(1).getSurname(), is("mathieu"));
+        assertThat(persons.get(0).getTelephoneNumber(), hasSize(2));
+        assertThat(filter.getValue(), is("(|(cn=alex)(cn=bob))"));
+
+        verify(dirContext, times(2)).search(any(Name.class), any(String.class), any(SearchControls.class));
+    }
+
+    private static SearchResult narrowed(final Name dn) {
+        final BasicAttributes attributes = new BasicAttributes(true);
+
+        final BasicAttribute objectClass = new BasicAttribute("objectClass");
+        objectClass.add("top");
+        objectClass.add("person");
+        attributes.put(objectClass);
+
+        attributes.put("cn", "alex");
+
+        return new SearchResult(dn.toString(), new DirContextAdapter(attributes, dn), attributes);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void streamAbandon() throws NamingException {
+        final NamingEnumeration<SearchResult> results = mock(NamingEnumeration.class);
+
+        when(results.hasMore()).thenReturn(true);
+        when(results.next()).thenReturn(new SearchResult(dn.toString(), person(dn), person(dn).getAttributes()));
+
+        when(dirContext.search(any(Name.class), any(String.class), any(SearchControls.class))).thenReturn(results);
+
+        try (Stream<Person> entries = session.getOperations(Person.class).search(dn).stream()) {
+            assertThat(entries.findFirst().get().getSurname(), is("mathieu"));
+        }
+
+        // the remaining results are not read
+        verify(results).close();
+        verify(dirContext).close();
+    }
+}
@@ -0,0 +1,78 @@
+package fr.mtlx.odm.spring;
+
+/*
+ * #%L
+ * fr.mtlx.odm
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2012 - 2013 Alexandre Mathieu <me@mtlx.fr>
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+
+import org.junit.Test;
+
+public class TestVirtualListView {
+
+    private static byte[] bytes(final int... values) {
+        final byte[] bytes = new byte[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+
+        return bytes;
+    }
+
+    @Test
+    public void encodeRequest() {
+        final VirtualListViewDirContextProcessor processor = new VirtualListViewDirContextProcessor(20, 10);
+
+        assertThat(processor.encode(), is(bytes(0x30, 0x0e, 0x02, 0x01, 0x00, 0x02, 0x01, 0x09,
+                0xa0, 0x06, 0x02, 0x01, 0x15, 0x02, 0x01, 0x00)));
+    }
+
+    @Test
+    public void encodeInteger() {
+        assertThat(Ber.integer(127), is(bytes(0x02, 0x01, 0x7f)));
+        assertThat(Ber.integer(128), is(bytes(0x02, 0x02, 0x00, 0x80)));
+        assertThat(Ber.integer(-1), is(bytes(0x02, 0x01, 0xff)));
+        assertThat(Ber.integer(65536), is(bytes(0x02, 0x03, 0x01, 0x00, 0x00)));
+    }
+
+    @Test
+    public void decodeResponse() throws NamingException {
+        final VirtualListViewDirContextProcessor processor = new VirtualListViewDirContextProcessor(20, 10);
+
+        processor.decode(bytes(0x30, 0x0a, 0x02, 0x01, 0x15, 0x02, 0x02, 0x01, 0xf4, 0x0a, 0x01, 0x00));
+
+        assertThat(processor.getTargetPosition(), is(21));
+        assertThat(processor.getContentCount(), is(500));
+    }
+
+    @Test(expected = OperationNotSupportedException.class)
+    public void decodeError() throws NamingException {
+        // sortControlMissing
+        new VirtualListViewDirContextProcessor(0, 10).decode(bytes(0x30, 0x09, 0x02, 0x01, 0x00, 0x02, 0x01, 0x00,
+                0x0a, 0x01, 0x3c));
+    }
+}